@@ -0,0 +1,85 @@
+package org.csbdeep.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.csbdeep.imglib2.GridView;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.list.ListImg;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Reading the tiles arranged by a {@link GridView}, as done when the tile
+ * results are merged into the output image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GridViewBenchmark {
+
+	@Param({ "256", "1024", "2048" })
+	public int size;
+
+	/** Number of tiles per dimension. */
+	@Param({ "2", "8" })
+	public int grid;
+
+	private GridView<FloatType> view;
+
+	@Setup
+	public void createView() {
+		final int tileSize = size / grid;
+		final List<RandomAccessibleInterval<FloatType>> tiles = new ArrayList<>();
+		for (int i = 0; i < grid * grid; i++) {
+			tiles.add(Images.fill(ArrayImgs.floats(tileSize, tileSize), 1));
+		}
+		view = new GridView<>(new ListImg<>(tiles, grid, grid));
+	}
+
+	@Benchmark
+	public float cursor() {
+		float res = 0;
+		final Cursor<FloatType> cursor = view.cursor();
+		while (cursor.hasNext()) {
+			res += cursor.next().get();
+		}
+		return res;
+	}
+
+	@Benchmark
+	public float randomAccess() {
+		float res = 0;
+		final RandomAccess<FloatType> access = view.randomAccess();
+		final long width = view.dimension(0);
+		final long height = view.dimension(1);
+		for (long y = 0; y < height; y++) {
+			access.setPosition(y, 1);
+			access.setPosition(0, 0);
+			for (long x = 0; x < width; x++) {
+				res += access.get().get();
+				access.fwd(0);
+			}
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.csbdeep.benchmark;
+
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Creates reproducible random test images for the benchmarks.
+ */
+class Images {
+
+	private Images() {}
+
+	/**
+	 * @param type one of {@code uint8}, {@code uint16} or {@code float}
+	 */
+	static Img<? extends RealType<?>> create(final String type,
+		final long... dims)
+	{
+		switch (type) {
+			case "uint8":
+				return fill(ArrayImgs.unsignedBytes(dims), 255);
+			case "uint16":
+				return fill(ArrayImgs.unsignedShorts(dims), 65535);
+			case "float":
+				return fill(ArrayImgs.floats(dims), 1);
+			default:
+				throw new IllegalArgumentException("Unknown pixel type: " + type);
+		}
+	}
+
+	static <T extends RealType<T>> Img<T> fill(final Img<T> img,
+		final double max)
+	{
+		final Random random = new Random(42);
+		for (final T value : img) {
+			value.setReal(random.nextDouble() * max);
+		}
+		return img;
+	}
+
+}
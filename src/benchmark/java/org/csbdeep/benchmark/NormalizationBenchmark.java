@@ -0,0 +1,59 @@
+package org.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.csbdeep.normalize.HistogramPercentile;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computing the percentiles used to normalize the network input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizationBenchmark {
+
+	private static final float[] PERCENTILES = { 3, 99.8f };
+
+	@Param({ "256", "1024", "2048" })
+	public int size;
+
+	@Param({ "uint8", "uint16", "float" })
+	public String type;
+
+	private RandomAccessibleInterval<? extends RealType<?>> image;
+
+	@Setup
+	public void createImage() {
+		image = Images.create(type, size, size);
+	}
+
+	@Benchmark
+	public float[] percentiles() {
+		return percentiles((RandomAccessibleInterval) image);
+	}
+
+	private static <T extends RealType<T>> float[] percentiles(
+		final RandomAccessibleInterval<T> image)
+	{
+		return new HistogramPercentile<T>().computePercentiles(image, PERCENTILES,
+			null);
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.csbdeep.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.csbdeep.network.DefaultModelExecutor;
+import org.csbdeep.tasks.SyntheticNetwork;
+import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.DefaultInputTiler;
+import org.csbdeep.tiling.DefaultOutputTiler;
+import org.csbdeep.tiling.DefaultTiling;
+import org.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * End-to-end throughput of the prediction pipeline: input tiling, model
+ * execution with a {@link SyntheticNetwork} and merging the output tiles. The
+ * cost per voxel of the stand-in model is configurable, with a cost of 0 the
+ * benchmark measures the overhead of the pipeline alone. Besides the images
+ * per second, JMH reports the processed input voxels per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+	private static final AxisType[] INPUT_AXES = { Axes.X, Axes.Y,
+		Axes.CHANNEL };
+	private static final Tiling.TilingAction[] ACTIONS = {
+		Tiling.TilingAction.TILE_WITH_PADDING,
+		Tiling.TilingAction.TILE_WITH_PADDING, Tiling.TilingAction.NO_TILING };
+
+	@Param({ "512", "2048" })
+	public int size;
+
+	@Param({ "1", "16" })
+	public int tiles;
+
+	/** Multiply-add operations of the stand-in model per output voxel. */
+	@Param({ "0", "100" })
+	public int costPerVoxel;
+
+	/** Number of output channels of the stand-in model. */
+	@Param({ "1", "2" })
+	public int outputChannels;
+
+	@Param({ "1", "4" })
+	public int inferenceWorkers;
+
+	private Img<FloatType> image;
+	private final QuietTaskManager taskManager = new QuietTaskManager();
+	private DefaultInputTiler<FloatType> inputTiler;
+	private DefaultModelExecutor<FloatType> modelExecutor;
+	private DefaultOutputTiler<FloatType> outputTiler;
+	private SyntheticNetwork<FloatType> network;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Throughput {
+
+		/** Input voxels, reported per second. */
+		public long voxels;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			voxels = 0;
+		}
+	}
+
+	@Setup
+	public void createPipeline() {
+		image = Images.fill(ArrayImgs.floats(size, size, 1), 1);
+		inputTiler = new DefaultInputTiler<>();
+		modelExecutor = new DefaultModelExecutor<>();
+		outputTiler = new DefaultOutputTiler<>();
+		taskManager.add(inputTiler);
+		taskManager.add(modelExecutor);
+		taskManager.add(outputTiler);
+		network = new SyntheticNetwork<>(modelExecutor);
+		network.setCostPerVoxel(costPerVoxel);
+		network.setOutputSize(2, outputChannels);
+		network.setInferenceWorkers(inferenceWorkers);
+	}
+
+	@Benchmark
+	public float run(final Throughput throughput) {
+		final Tiling<FloatType> tiling = new DefaultTiling<>(tiles, 1, 32, 32);
+		final List<AdvancedTiledView<FloatType>> tiledInput = inputTiler.run(
+			Collections.singletonList(image), INPUT_AXES, tiling, ACTIONS);
+		final List<AdvancedTiledView<FloatType>> tiledOutput = modelExecutor.run(
+			tiledInput, network);
+		final List<RandomAccessibleInterval<FloatType>> output = outputTiler.run(
+			tiledOutput, tiling, INPUT_AXES);
+		final float res = sum(output.get(0));
+		tiledOutput.forEach(AdvancedTiledView::dispose);
+
+		throughput.voxels += image.size();
+		return res;
+	}
+
+	private static float sum(final RandomAccessibleInterval<FloatType> image) {
+		float res = 0;
+		final Cursor<FloatType> cursor = Views.flatIterable(image).cursor();
+		while (cursor.hasNext()) {
+			res += cursor.next().get();
+		}
+		return res;
+	}
+
+}
@@ -0,0 +1,17 @@
+package org.csbdeep.benchmark;
+
+import org.csbdeep.task.DefaultTask;
+
+/**
+ * Task which drops log messages, so that they do not end up in the measured
+ * time or the benchmark output.
+ */
+class QuietTask extends DefaultTask {
+
+	@Override
+	public void debug(final String msg) {}
+
+	@Override
+	public void log(final String msg) {}
+
+}
@@ -0,0 +1,55 @@
+package org.csbdeep.benchmark;
+
+import org.csbdeep.task.Task;
+import org.csbdeep.task.TaskManager;
+
+/**
+ * Task manager which drops all log messages and progress updates.
+ */
+class QuietTaskManager implements TaskManager {
+
+	@Override
+	public void initialize() {}
+
+	@Override
+	public void add(final Task task) {
+		task.setManager(this);
+	}
+
+	@Override
+	public void debug(final String msg) {}
+
+	@Override
+	public void log(final String msg) {}
+
+	@Override
+	public void logError(final String msg) {
+		System.err.println(msg);
+	}
+
+	@Override
+	public void finalizeSetup() {}
+
+	@Override
+	public void update(final Task task) {}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public void noGPUFound() {}
+
+	@Override
+	public boolean isCanceled() {
+		return false;
+	}
+
+	@Override
+	public void cancel(final String reason) {}
+
+	@Override
+	public String getCancelReason() {
+		return null;
+	}
+
+}
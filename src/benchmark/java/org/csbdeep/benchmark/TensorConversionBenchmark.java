@@ -0,0 +1,85 @@
+package org.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tensorflow.Tensor;
+
+import org.csbdeep.network.model.tensorflow.DatasetTensorFlowConverter;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Converting tiles into tensors and tensors back into images. Only the CPU
+ * TensorFlow library is needed to create the tensors, no model is loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TensorConversionBenchmark {
+
+	// XYC image to a (Y, X, C) tensor, as for a 2D single channel model
+	private static final int[] MAPPING = { 2, 1, 0 };
+
+	@Param({ "256", "1024", "2048" })
+	public int size;
+
+	@Param({ "uint8", "uint16", "float" })
+	public String type;
+
+	private RandomAccessibleInterval<? extends RealType<?>> image;
+	private Tensor<?> output;
+
+	@Setup
+	public void createImage() {
+		image = Images.create(type, size, size, 1);
+		output = toTensor((RandomAccessibleInterval) Images.create("float", size,
+			size, 1));
+	}
+
+	@TearDown
+	public void closeTensor() {
+		output.close();
+	}
+
+	@Benchmark
+	public long imageToTensor() {
+		try (Tensor<?> tensor = toTensor((RandomAccessibleInterval) image)) {
+			return tensor.numElements();
+		}
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval<FloatType> tensorToImage() {
+		return DatasetTensorFlowConverter.tensorToDataset((Tensor) output,
+			new FloatType(), MAPPING, false);
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval<FloatType> tensorToReusedImage() {
+		return DatasetTensorFlowConverter.tensorToReusedFloatImg(output, MAPPING,
+			false);
+	}
+
+	private static <T extends RealType<T>> Tensor<?> toTensor(
+		final RandomAccessibleInterval<T> image)
+	{
+		return DatasetTensorFlowConverter.datasetToTensor(image, MAPPING);
+	}
+
+}
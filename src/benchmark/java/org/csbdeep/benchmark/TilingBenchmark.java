@@ -0,0 +1,99 @@
+package org.csbdeep.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.csbdeep.task.Task;
+import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.DefaultTiling;
+import org.csbdeep.tiling.Tiling;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Splitting an image into padded tiles and merging the tiles again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TilingBenchmark {
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y };
+	private static final Tiling.TilingAction[] ACTIONS = {
+		Tiling.TilingAction.TILE_WITH_PADDING,
+		Tiling.TilingAction.TILE_WITH_PADDING };
+
+	@Param({ "256", "1024", "2048" })
+	public int size;
+
+	@Param({ "1", "8", "32" })
+	public int tiles;
+
+	private final Task task = new QuietTask();
+	private Img<FloatType> image;
+	private Tiling<FloatType> tiling;
+	private AdvancedTiledView<FloatType> tiledView;
+
+	@Setup
+	public void createImage() {
+		image = Images.fill(ArrayImgs.floats(size, size), 1);
+		tiling = new DefaultTiling<>(tiles, 1, 32, 32);
+	}
+
+	@Setup(Level.Invocation)
+	public void tileImage() {
+		// merging changes the tiled view, it is created again for each call
+		tiledView = tiling.preprocess(image, AXES, ACTIONS, task);
+		tiledView.getProcessedTiles().clear();
+		Views.iterable(tiledView).forEach(tiledView.getProcessedTiles()::add);
+	}
+
+	@Benchmark
+	public float split() {
+		final AdvancedTiledView<FloatType> view = tiling.preprocess(image, AXES,
+			ACTIONS, task);
+		float res = 0;
+		for (final RandomAccessibleInterval<FloatType> tile : Views.iterable(
+			view))
+		{
+			res += sum(tile);
+		}
+		return res;
+	}
+
+	@Benchmark
+	public float merge() {
+		return sum(tiling.postprocess(task, tiledView, AXES));
+	}
+
+	private static float sum(final RandomAccessibleInterval<FloatType> image) {
+		float res = 0;
+		final Cursor<FloatType> cursor = Views.flatIterable(image).cursor();
+		while (cursor.hasNext()) {
+			res += cursor.next().get();
+		}
+		return res;
+	}
+
+}
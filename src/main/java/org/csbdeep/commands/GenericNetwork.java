@@ -38,6 +38,8 @@ import net.imagej.ops.OpService;
 import net.imagej.tensorflow.TensorFlowService;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.csbdeep.io.Checkpoint;
 import org.csbdeep.io.DefaultInputProcessor;
 import org.csbdeep.io.DefaultOutputProcessor;
 import org.csbdeep.io.InputProcessor;
@@ -45,9 +47,16 @@ import org.csbdeep.io.OutputProcessor;
 import org.csbdeep.network.*;
 import org.csbdeep.network.model.ImageTensor;
 import org.csbdeep.network.model.Network;
+import org.csbdeep.network.model.tensorflow.SessionConfig;
 import org.csbdeep.network.model.tensorflow.TensorFlowNetwork;
+import org.csbdeep.network.worker.InferenceClient;
+import org.csbdeep.network.worker.WorkerPool;
 import org.csbdeep.normalize.DefaultInputNormalizer;
 import org.csbdeep.normalize.InputNormalizer;
+import org.csbdeep.normalize.NormalizationStatisticsCache;
+import org.csbdeep.normalize.Normalizer;
+import org.csbdeep.task.PipelineMetrics;
+import org.csbdeep.task.StageMetrics;
 import org.csbdeep.task.Task;
 import org.csbdeep.task.TaskForceManager;
 import org.csbdeep.task.TaskManager;
@@ -57,6 +66,7 @@ import org.csbdeep.util.IOHelper;
 import org.scijava.Cancelable;
 import org.scijava.Disposable;
 import org.scijava.Initializable;
+import org.scijava.app.AppService;
 import org.scijava.ItemIO;
 import org.scijava.command.Command;
 import org.scijava.log.LogService;
@@ -77,6 +87,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.function.Function;
 
 @Plugin(type = Command.class, menuPath = "Plugins>CSBDeep>Run your network")
 public class GenericNetwork implements
@@ -99,6 +110,16 @@ public class GenericNetwork implements
 	@Parameter(label = "Clip normalization")
 	protected boolean clip = false;
 
+	@Parameter(label = "Region of interest (x,y,width,height or " +
+		"x,y,z,width,height,depth, empty = whole image)", required = false)
+	protected String regionOfInterest = "";
+
+	@Parameter(label = "Normalize on the fly (saves memory)")
+	protected boolean normalizeLazily = false;
+
+	@Parameter(label = "Cache normalization statistics")
+	protected boolean cacheNormalization = false;
+
 	@Parameter(label = "Number of tiles", min = "1")
 	protected int nTiles = 8;
 
@@ -114,6 +135,79 @@ public class GenericNetwork implements
 	@Parameter(label = "Batch size", min = "1")
 	protected int batchSize = 1;
 
+	@Parameter(label = "Number of tiles per network run", min = "1")
+	protected int tilesPerRun = 1;
+
+	@Parameter(label = "Number of concurrent network runs", min = "1")
+	protected int inferenceWorkers = 1;
+
+	@Parameter(label = "Choose tiling based on available memory")
+	protected boolean planTilingFromMemory = false;
+
+	@Parameter(label = "Skip background tiles", choices = { "no", "max",
+		"mean", "fraction above threshold" })
+	protected String skipBackgroundTiles = "no";
+
+	@Parameter(label = "Background threshold (normalized input)")
+	protected float backgroundThreshold = 0.1f;
+
+	@Parameter(label = "Minimal fraction of values above the threshold",
+		min = "0", max = "1")
+	protected float backgroundFraction = 0.01f;
+
+	@Parameter(label = "Result of background tiles", choices = { "constant",
+		"input" })
+	protected String backgroundFill = "constant";
+
+	@Parameter(label = "Constant value of background tiles")
+	protected float backgroundValue = 0;
+
+	@Parameter(label = "Cache tile results (reuses results of unchanged tiles)")
+	protected boolean cacheTileResults = false;
+
+	@Parameter(label = "Tile result cache size (MB)", min = "1")
+	protected int tileCacheSize = 1024;
+
+	@Parameter(label = "Keep completed tiles when running out of memory")
+	protected boolean keepCompletedTiles = true;
+
+	@Parameter(label = "Keep output tiles on disk (for large outputs)")
+	protected boolean writeOutputToDisk = false;
+
+	@Parameter(label = "Write tiles directly into the output image")
+	protected boolean preallocateOutput = false;
+
+	@Parameter(label = "TensorFlow threads per operation (0 = default)",
+		min = "0")
+	protected int intraOpThreads = 0;
+
+	@Parameter(label = "TensorFlow operations in parallel (0 = default)",
+		min = "0")
+	protected int interOpThreads = 0;
+
+	@Parameter(label = "Auto-tune TensorFlow threads")
+	protected boolean autoTuneThreads = false;
+
+	@Parameter(label = "Checkpoint directory (to resume interrupted runs)",
+		style = "directory", required = false)
+	protected File checkpointDirectory = null;
+
+	@Parameter(label = "Worker processes (host:port, comma separated)",
+		required = false)
+	protected String workerAddresses = "";
+
+	@Parameter(label = "Worker timeout per tile (seconds)", min = "1",
+		required = false)
+	protected int workerTimeout = WorkerPool.DEFAULT_TIMEOUT_MS / 1000;
+
+	@Parameter(label = "Inference server (e.g. http://localhost:8765)",
+		required = false)
+	protected String inferenceServerUrl = "";
+
+	@Parameter(label = "Write pipeline metrics to (.json or .prom)",
+		style = "save", required = false)
+	protected File metricsFile = null;
+
 	public enum NetworkInputSourceType { UNSET, FILE, URL }
 	
 	private NetworkInputSourceType networkInputSourceType = NetworkInputSourceType.UNSET;
@@ -157,6 +251,9 @@ public class GenericNetwork implements
 	@Parameter
 	private ThreadService threadService;
 
+	@Parameter
+	private AppService appService;
+
 	protected String modelName;
 
 	protected TaskManager taskManager;
@@ -189,6 +286,20 @@ public class GenericNetwork implements
 
 	private int oldNTiles;
 	private int oldBatchesSize;
+	private int oldTilesPerRun;
+	private int oldInferenceWorkers;
+
+	private OutputSink<FloatType> outputSink = null;
+
+	// per input image, kept across out of memory retries
+	private List<CompletedTiles> completedTiles = new ArrayList<>();
+
+	private Checkpoint checkpoint = null;
+	private boolean resumed = false;
+	private RegionOfInterest roi = null;
+	private WorkerPool workerPool = null;
+	private String workerPoolAddresses = null;
+	private int workerPoolTimeout = 0;
 
 	protected void openTFMappingDialog() {
 		finishModelLoading();
@@ -325,6 +436,7 @@ public class GenericNetwork implements
 	protected boolean initNetwork() {
 		network = new TensorFlowNetwork(tensorFlowService, datasetService,
 			modelExecutor);
+		TensorFlowNetwork.getModelRegistry().setLogger(log);
 		if(network.libraryLoaded()) {
 			network.testGPUSupport();
 			if(!network.supportsGPU()) taskManager.noGPUFound();
@@ -392,6 +504,63 @@ public class GenericNetwork implements
 		tiling = new DefaultTiling(nTiles, batchSize, blockMultiple, overlap);
 	}
 
+	/**
+	 * Selects the model without loading it in the background, for running the
+	 * command from code. The model is loaded by the next run.
+	 */
+	public void setModelFile(final File modelFile) {
+		this.modelFile = modelFile;
+		modelUrl = null;
+		networkInputSourceType = NetworkInputSourceType.FILE;
+		modelFileUrl = modelFile.getAbsolutePath();
+	}
+
+	/**
+	 * @see #setModelFile(File)
+	 */
+	public void setModelUrl(final String modelUrl) {
+		this.modelUrl = modelUrl;
+		modelFile = null;
+		networkInputSourceType = NetworkInputSourceType.URL;
+		modelFileUrl = modelUrl;
+	}
+
+	/**
+	 * Runs the network on the given input and keeps the task manager, the
+	 * network with its loaded model and the worker connections for the next
+	 * call, so that a series of inputs only pays the setup once. Changes of the
+	 * tiling for one input, e.g. after running out of memory, do not carry over
+	 * to the next. {@link #dispose()} has to be called after the last input.
+	 *
+	 * @return the outputs of the given input
+	 */
+	public List<Dataset> process(final Dataset input) {
+		this.input = input;
+		output.clear();
+		if (noInputData()) return new ArrayList<>();
+		if (network != null && network.isInitialized()) {
+			// the model stays loaded, only the nodes depend on the input
+			network.loadInputNode(input);
+			network.loadOutputNode(input);
+			network.initMapping();
+			network.preprocess();
+		}
+		final int tiles = nTiles;
+		final int batches = batchSize;
+		final int runTiles = tilesPerRun;
+		final int workers = inferenceWorkers;
+		try {
+			mainThread();
+		}
+		finally {
+			nTiles = tiles;
+			batchSize = batches;
+			tilesPerRun = runTiles;
+			inferenceWorkers = workers;
+		}
+		return new ArrayList<>(output);
+	}
+
 	public void run() {
 
 		if (noInputData()) return;
@@ -424,13 +593,17 @@ public class GenericNetwork implements
 
 		prepareInputAndNetwork();
 
+		if (!parseRegionOfInterest()) return;
+
+		openCheckpoint();
+
 		final Dataset normalizedInput;
 		if (doInputNormalization()) {
 			setupNormalizer();
 			normalizedInput = inputNormalizer.run(getInput(), opService,
 					datasetService);
 		} else {
-			normalizedInput = getInput();
+			normalizedInput = cropToProcessedRegion(getInput());
 		}
 
 		final List<RandomAccessibleInterval> processedInput = inputProcessor.run(
@@ -441,7 +614,9 @@ public class GenericNetwork implements
 		log("OUTPUT NODE: ");
 		network.getOutputNode().printMapping(inputProcessor);
 
+		if (planTilingFromMemory && !resumed) planTiling(processedInput);
 		initTiling();
+		saveCheckpointPlan();
 		final List<AdvancedTiledView<FloatType>> tiledOutput =
 				tryToTileAndRunNetwork(processedInput);
 		if(tiledOutput != null) {
@@ -453,24 +628,188 @@ public class GenericNetwork implements
 			this.output.clear();
 			this.output.addAll(outputProcessor.run(output, getInput(),
 					getAxesArray(network.getOutputNode()), datasetService));
+			cropOutputToRegionOfInterest();
+			// the run is complete, there is nothing left to resume
+			if (checkpoint != null) checkpoint.clear();
 		}
 
+		writeMetrics();
+
+	}
+
+	/**
+	 * @return wall time, throughput and model timings of the pipeline stages of
+	 *         the last run, or null if the command is not initialized
+	 */
+	public PipelineMetrics getMetrics() {
+		if (!(taskManager instanceof TaskForceManager)) return null;
+		return ((TaskForceManager) taskManager).getMetrics();
+	}
+
+	private StageMetrics getStageMetrics(final String stage) {
+		final PipelineMetrics metrics = getMetrics();
+		return metrics != null ? metrics.get(stage) : null;
+	}
+
+	private void writeMetrics() {
+		final PipelineMetrics metrics = getMetrics();
+		if (metricsFile == null || metrics == null) return;
+		try {
+			metrics.write(metricsFile);
+			log("Wrote pipeline metrics to " + metricsFile);
+		}
+		catch (final IOException e) {
+			log.warn("Could not write pipeline metrics: " + e.getMessage());
+		}
 	}
 
 	private void solveModelSource() {
 		if(modelFileUrl.isEmpty()) modelFileChanged();
 		if(modelFileUrl.isEmpty()) modelUrlChanged();
 		try {
-			modelLoadingFuture.get();
+			if (modelLoadingFuture != null) modelLoadingFuture.get();
 		} catch (InterruptedException | ExecutionException e) {
 			e.printStackTrace();
 		}
 	}
 
 	protected void setupNormalizer() {
-		((DefaultInputNormalizer) inputNormalizer).getNormalizer().setup(
-				new float[] { percentileBottom, percentileTop }, new float[] { min,
-						max }, clip);
+		final Normalizer normalizer = ((DefaultInputNormalizer) inputNormalizer)
+				.getNormalizer();
+		normalizer.setup(new float[] { percentileBottom, percentileTop },
+				new float[] { min, max }, clip);
+		normalizer.setLazy(normalizeLazily);
+		// the percentiles are still computed on the whole input
+		normalizer.setRegion(roi != null ? roi.getProcessedRegion() : null);
+		NormalizationStatisticsCache cache = null;
+		if (checkpoint != null) {
+			cache = checkpoint.getNormalizationCache();
+		}
+		else if (cacheNormalization) {
+			cache = new NormalizationStatisticsCache(getModelsDirectory());
+		}
+		if (cache != null) cache.setLogger(log);
+		normalizer.setStatisticsCache(cache);
+	}
+
+	/**
+	 * Parses the region of interest. Only the region plus the overlap between
+	 * tiles as halo is tiled and run through the network.
+	 *
+	 * @return false if the region is invalid
+	 */
+	protected boolean parseRegionOfInterest() {
+		try {
+			roi = RegionOfInterest.parse(regionOfInterest, getInput(), overlap);
+		}
+		catch (final IllegalArgumentException e) {
+			roi = null;
+			if (isHeadless()) {
+				log(e.getMessage());
+			}
+			else {
+				showError(e.getMessage());
+			}
+			return false;
+		}
+		if (roi != null) log("Processing region of interest " + roi);
+		return true;
+	}
+
+	private Dataset cropToProcessedRegion(final Dataset input) {
+		if (roi == null) return input;
+		return createDataset(input, Views.zeroMin(Views.interval(
+			(RandomAccessibleInterval) input.getImgPlus(), roi
+				.getProcessedRegion())));
+	}
+
+	/**
+	 * Removes the halo from the outputs, the outputs only cover the region of
+	 * interest.
+	 */
+	private void cropOutputToRegionOfInterest() {
+		if (roi == null) return;
+		for (int i = 0; i < output.size(); i++) {
+			final Dataset dataset = output.get(i);
+			output.set(i, createDataset(dataset, roi.crop(
+				(RandomAccessibleInterval) dataset.getImgPlus(), getAxes(dataset))));
+		}
+	}
+
+	private Dataset createDataset(final Dataset template,
+		final RandomAccessibleInterval img)
+	{
+		final Dataset dataset = datasetService.create(img);
+		dataset.setName(template.getName());
+		final AxisType[] axes = getAxes(template);
+		for (int i = 0; i < axes.length; i++) {
+			dataset.axis(i).setType(axes[i]);
+		}
+		return dataset;
+	}
+
+	private static AxisType[] getAxes(final Dataset dataset) {
+		final AxisType[] axes = new AxisType[dataset.numDimensions()];
+		for (int i = 0; i < axes.length; i++) {
+			axes[i] = dataset.axis(i).type();
+		}
+		return axes;
+	}
+
+	/**
+	 * Opens the checkpoint directory, if one is set. If it holds the progress of
+	 * an interrupted run with the same input, model and parameters, the tiling
+	 * of that run is used and its completed tiles are not processed again.
+	 */
+	protected void openCheckpoint() {
+		checkpoint = null;
+		resumed = false;
+		if (checkpointDirectory == null) return;
+		final Checkpoint checkpoint = new Checkpoint(checkpointDirectory);
+		checkpoint.setLogger(log);
+		// the normalizer gets the same cache and reuses this key
+		final String inputKey = checkpoint.getNormalizationCache().getKey(
+			(RandomAccessibleInterval) getInput().getImgPlus(), new float[] {
+				percentileBottom, percentileTop });
+		final String key = Checkpoint.createKey(cacheName, inputKey, String
+			.valueOf(normalizeInput), String.valueOf(percentileBottom), String
+				.valueOf(percentileTop), String.valueOf(min), String.valueOf(max),
+			String.valueOf(clip), String.valueOf(blockMultiple), String.valueOf(
+				overlap), batchAxis, Arrays.toString(getMapping()), String.valueOf(
+					roi));
+		try {
+			resumed = checkpoint.open(key);
+		}
+		catch (final IOException e) {
+			log.warn("Could not open checkpoint directory, running without checkpoint", e);
+			return;
+		}
+		this.checkpoint = checkpoint;
+		if (resumed && checkpoint.getPlan() != null) {
+			final Checkpoint.Plan plan = checkpoint.getPlan();
+			nTiles = plan.getNTiles();
+			batchSize = plan.getBatchSize();
+			tilesPerRun = plan.getTilesPerRun();
+			log("Resuming from checkpoint in " + checkpointDirectory);
+		}
+	}
+
+	private void saveCheckpointPlan() {
+		if (checkpoint == null) return;
+		try {
+			checkpoint.savePlan(nTiles, batchSize, tilesPerRun);
+		}
+		catch (final IOException e) {
+			log.warn("Could not save the tiling plan to the checkpoint: " + e
+				.getMessage());
+		}
+	}
+
+	/**
+	 * @return the directory where imagej-tensorflow caches the models
+	 */
+	protected File getModelsDirectory() {
+		return new File(appService.getApp().getBaseDirectory(), "models");
 	}
 
 	protected boolean doInputNormalization() {
@@ -480,9 +819,130 @@ public class GenericNetwork implements
 	protected void prepareInputAndNetwork() {
 
 		modelName = cacheName;
+		network.setMetrics(getStageMetrics("Execution"));
+		network.setBackgroundTiles(createBackgroundTiles());
+		if (network instanceof TensorFlowNetwork) {
+			configureSession((TensorFlowNetwork) network);
+		}
 		modelLoader.run(modelName, network, modelFileUrl, getInput());
 		inputMapper.run(getInput(), network);
+		// after mapping the input, the mapping is part of the key
+		network.setTileCache(cacheTileResults ? createTileCache() : null,
+			getTileCachePrefix());
+
+	}
+
+	private TileResultCache createTileCache() {
+		final TileResultCache cache = new TileResultCache(getModelsDirectory(),
+			tileCacheSize * 1024L * 1024L);
+		cache.setLogger(log);
+		return cache;
+	}
+
+	protected BackgroundTiles createBackgroundTiles() {
+		final BackgroundTiles.Statistic statistic;
+		switch (skipBackgroundTiles) {
+			case "max":
+				statistic = BackgroundTiles.Statistic.MAX;
+				break;
+			case "mean":
+				statistic = BackgroundTiles.Statistic.MEAN;
+				break;
+			case "fraction above threshold":
+				statistic = BackgroundTiles.Statistic.FRACTION_ABOVE;
+				break;
+			default:
+				return null;
+		}
+		final BackgroundTiles.Fill fill = "input".equals(backgroundFill)
+			? BackgroundTiles.Fill.PASSTHROUGH : BackgroundTiles.Fill.CONSTANT;
+		return new BackgroundTiles(statistic, backgroundThreshold,
+			backgroundFraction, fill, backgroundValue);
+	}
+
+	/**
+	 * @return identifies the model and the parameters which change what the
+	 *         model computes for the same tile
+	 */
+	private String getTileCachePrefix() {
+		return Checkpoint.createKey(cacheName, String.valueOf(normalizeInput),
+			String.valueOf(percentileBottom), String.valueOf(percentileTop), String
+				.valueOf(min), String.valueOf(max), String.valueOf(clip), Arrays
+					.toString(getMapping()));
+	}
+
+	protected void configureSession(final TensorFlowNetwork network) {
+		network.setModelsDirectory(getModelsDirectory());
+		int intraOp = intraOpThreads;
+		int interOp = interOpThreads;
+		if (intraOp == 0 && interOp == 0 && inferenceWorkers > 1) {
+			// share the cores between the concurrent runs instead of giving each
+			// run one thread per core
+			intraOp = Math.max(1, Runtime.getRuntime().availableProcessors() /
+				inferenceWorkers);
+			interOp = 1;
+		}
+		network.setSessionConfig(new SessionConfig(intraOp, interOp, false));
+		network.setAutoTuneSession(autoTuneThreads);
+		if (inferenceServerUrl != null && !inferenceServerUrl.trim().isEmpty()) {
+			network.setRemoteProcessor(createInferenceClient());
+		}
+		else {
+			network.setRemoteProcessor(openWorkerPool());
+		}
+	}
+
+	private InferenceClient createInferenceClient() {
+		// the server loads the model from the directory imagej-tensorflow
+		// unpacked it to
+		try {
+			final InferenceClient client = new InferenceClient(inferenceServerUrl
+				.trim(), modelName);
+			log("Running the model on inference server " + inferenceServerUrl);
+			return client;
+		}
+		catch (final IOException e) {
+			log.warn("Invalid inference server address, running the model " +
+				"locally: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private WorkerPool openWorkerPool() {
+		if (workerPool != null && workerAddresses != null && workerAddresses
+			.equals(workerPoolAddresses) && workerTimeout == workerPoolTimeout)
+		{
+			// keep the connections of the previous input
+			return workerPool;
+		}
+		closeWorkerPool();
+		if (workerAddresses == null || workerAddresses.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			workerPool = new WorkerPool(WorkerPool.parseAddresses(workerAddresses),
+				(int) Math.min(Integer.MAX_VALUE, workerTimeout * 1000L), log);
+			workerPoolAddresses = workerAddresses;
+			workerPoolTimeout = workerTimeout;
+			log("Running the model on " + workerPool.size() + " worker process(es)");
+		}
+		catch (final IOException | IllegalArgumentException e) {
+			log.warn("Could not connect to worker processes, running the " +
+				"model locally: " + e.getMessage());
+		}
+		return workerPool;
+	}
+
+	private void closeWorkerPool() {
+		if (workerPool != null) {
+			workerPool.close();
+			workerPool = null;
+		}
+	}
 
+	private int getInferenceWorkers() {
+		// each worker process runs one tile at a time
+		return workerPool != null ? workerPool.size() : inferenceWorkers;
 	}
 
 	private void savePreferences() {
@@ -499,6 +959,7 @@ public class GenericNetwork implements
 		if (network != null) {
 			network.dispose();
 		}
+		closeWorkerPool();
 		if(pool != null) {
 			pool.shutdown();
 		}
@@ -514,6 +975,66 @@ public class GenericNetwork implements
 		return res;
 	}
 
+	/**
+	 * Adjusts the number of tiles, the batch size and the number of tiles per
+	 * run such that the estimated memory usage fits into the available memory.
+	 * {@link OutOfMemoryError}s are still handled in case the estimate is wrong.
+	 */
+	protected void planTiling(final List<RandomAccessibleInterval> processedInput) {
+		final MemoryPlanner planner = new MemoryPlanner();
+		planner.setOutputRatio(getOutputToInputRatio());
+		planner.setOutputInMemory(!writeOutputToDisk);
+		planner.setConcurrentRuns(inferenceWorkers);
+		planner.setTilesInFlight(Math.max(MemoryPlanner.DEFAULT_TILES_IN_FLIGHT,
+			2 * inferenceWorkers));
+		final Tiling.TilingAction[] actions = getTilingActions();
+		final int requestedTiles = nTiles;
+		final int requestedBatchSize = batchSize;
+		final int requestedTilesPerRun = tilesPerRun;
+		MemoryPlanner.Plan plan = null;
+		for (final RandomAccessibleInterval image : processedInput) {
+			plan = planner.plan(image, actions, nTiles, batchSize, tilesPerRun,
+				blockMultiple, overlap);
+			nTiles = plan.getNTiles();
+			batchSize = plan.getBatchSize();
+			tilesPerRun = plan.getTilesPerRun();
+		}
+		if (plan == null) return;
+		if (nTiles != requestedTiles || batchSize != requestedBatchSize ||
+			tilesPerRun != requestedTilesPerRun)
+		{
+			log.info("Changed the tiling to fit into the available memory " +
+				"(requested " + requestedTiles + " tile(s), batch size " +
+				requestedBatchSize + ", " + requestedTilesPerRun +
+				" tile(s) per run)");
+		}
+		if (plan.fits()) {
+			log("Planned tiling from available memory: " + plan);
+		}
+		else {
+			log.warn("Input might not fit into memory: " + plan);
+		}
+	}
+
+	/**
+	 * @return the number of output values per input value, computed from the
+	 *         known sizes of the network nodes without the batch dimension
+	 */
+	private double getOutputToInputRatio() {
+		final Long[] inShape = network.getInputNode().getNodeShape();
+		final Long[] outShape = network.getOutputNode().getNodeShape();
+		if (inShape == null || outShape == null) return 1;
+		return (double) knownSize(outShape) / knownSize(inShape);
+	}
+
+	private static long knownSize(final Long[] shape) {
+		long size = 1;
+		for (int i = 1; i < shape.length; i++) {
+			if (shape[i] != null && shape[i] > 0) size *= shape[i];
+		}
+		return size;
+	}
+
 	protected List<AdvancedTiledView<FloatType>> tryToTileAndRunNetwork(
 		final List<RandomAccessibleInterval> normalizedInput)
 		throws OutOfMemoryError
@@ -522,13 +1043,27 @@ public class GenericNetwork implements
 
 		boolean isOutOfMemory = true;
 		boolean canHandleOutOfMemory = true;
+		completedTiles = checkpoint != null ? restoreCompletedTiles(normalizedInput
+			.size()) : createCompletedTiles(normalizedInput.size());
 
 		while (isOutOfMemory && canHandleOutOfMemory) {
+			List<AdvancedTiledView> tiledInput = null;
+			AxisType[] outputAxes = null;
 			try {
-				final List<AdvancedTiledView> tiledInput = inputTiler.run(
+				if (!canKeepCompletedTiles()) {
+					completedTiles = createCompletedTiles(normalizedInput.size());
+				}
+				tiledInput = inputTiler.run(
 					normalizedInput, getAxesArray(getInput()), tiling, getTilingActions());
 				nTiles = tiling.getTilesNum();
 				if(tiledInput != null) {
+					if(network != null) {
+						network.setTilesPerRun(tilesPerRun);
+						network.setInferenceWorkers(getInferenceWorkers());
+						outputAxes = getAxesArray(network.getOutputNode());
+						modelExecutor.setOutputSink(createOutputSinkFactory(outputAxes,
+							tiledInput), tiling, outputAxes);
+					}
 					tiledOutput = modelExecutor.run(tiledInput, network);
 				}
 				isOutOfMemory = false;
@@ -536,6 +1071,9 @@ public class GenericNetwork implements
 			}
 			catch (final OutOfMemoryError e) {
 				isOutOfMemory = true;
+				if (canKeepCompletedTiles() && outputAxes != null) {
+					storeCompletedTiles(tiledInput, outputAxes);
+				}
 				canHandleOutOfMemory = tryHandleOutOfMemoryError();
 			}
 		}
@@ -546,6 +1084,123 @@ public class GenericNetwork implements
 		return tiledOutput;
 	}
 
+	/**
+	 * Completed tiles are kept in an output image in memory, which is why they
+	 * are not kept if the output should be written to disk, unless a checkpoint
+	 * is used.
+	 */
+	private boolean canKeepCompletedTiles() {
+		return checkpoint != null || keepCompletedTiles && !writeOutputToDisk;
+	}
+
+	private List<CompletedTiles> restoreCompletedTiles(final int count) {
+		final List<CompletedTiles> res = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			res.add(checkpoint.restore(i));
+		}
+		return res;
+	}
+
+	private static List<CompletedTiles> createCompletedTiles(final int count) {
+		final List<CompletedTiles> res = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			res.add(new CompletedTiles());
+		}
+		return res;
+	}
+
+	private boolean hasCompletedTiles() {
+		for (final CompletedTiles completed : completedTiles) {
+			if (!completed.isEmpty()) return true;
+		}
+		return false;
+	}
+
+	private CompletedTiles getCompletedTiles(
+		final List<AdvancedTiledView> tiledInput, final AdvancedTiledView view)
+	{
+		final int index = tiledInput.indexOf(view);
+		return index >= 0 && index < completedTiles.size() ? completedTiles.get(
+			index) : new CompletedTiles();
+	}
+
+	/**
+	 * Writes the tiles which were completed before running out of memory into
+	 * the output image of their input, such that the next run with smaller
+	 * tiles only processes the regions which are still missing.
+	 */
+	private void storeCompletedTiles(final List<AdvancedTiledView> tiledInput,
+		final AxisType[] outputAxes)
+	{
+		if (tiledInput == null) return;
+		int kept = 0;
+		for (final AdvancedTiledView view : tiledInput) {
+			final List<RandomAccessibleInterval<FloatType>> tiles = view
+				.getProcessedTiles();
+			// tiles of a merged output were already written by the output sink
+			if (tiles.isEmpty() || view.getMergedOutput() != null) continue;
+			final PreallocatedOutputSink sink = new PreallocatedOutputSink(view,
+				outputAxes, getCompletedTiles(tiledInput, view));
+			for (final RandomAccessibleInterval<FloatType> tile : tiles) {
+				sink.store(view.isPaddingRemoved() ? tile : tiling.removePadding(tile,
+					view.getOverlapComplete(), view.getOriginalAxes(), outputAxes));
+			}
+			kept += tiles.size();
+			tiles.clear();
+		}
+		if (kept > 0) log("Keeping " + kept + " completed tile(s)");
+	}
+
+	/**
+	 * Hands the files holding the outputs of the last run over to the caller,
+	 * if the outputs are written to disk. The caller disposes the sink once the
+	 * outputs are saved or copied, the next run does not touch it anymore.
+	 * Otherwise the files are deleted when the next run starts or the JVM
+	 * exits.
+	 *
+	 * @return null if the outputs are kept in memory
+	 */
+	public OutputSink<FloatType> detachOutputSink() {
+		final OutputSink<FloatType> sink = outputSink;
+		outputSink = null;
+		return sink;
+	}
+
+	/**
+	 * Creates the sinks for the tile results of the next network run. Tile
+	 * results of a previous, failed run are deleted unless they were kept as
+	 * completed tiles, in which case the next run writes into the same output
+	 * and skips the completed regions.
+	 */
+	protected Function<AdvancedTiledView<FloatType>, OutputSink<FloatType>>
+		createOutputSinkFactory(final AxisType[] outputAxes,
+			final List<AdvancedTiledView> tiledInput)
+	{
+		if (outputSink != null) {
+			outputSink.dispose();
+			outputSink = null;
+		}
+		if (checkpoint != null || canKeepCompletedTiles() && hasCompletedTiles()) {
+			return view -> new PreallocatedOutputSink(view, outputAxes,
+				getCompletedTiles(tiledInput, view));
+		}
+		if (writeOutputToDisk) {
+			try {
+				final DiskOutputSink sink = new DiskOutputSink();
+				outputSink = sink;
+				return view -> sink;
+			}
+			catch (final IOException e) {
+				log.warn("Could not create temporary output directory, keeping output in memory", e);
+			}
+		}
+		if (preallocateOutput) {
+			return view -> new PreallocatedOutputSink(view, outputAxes,
+				getCompletedTiles(tiledInput, view));
+		}
+		return null;
+	}
+
 	protected AxisType[] getAxesArray(Dataset input) {
 		if(network != null && network.getInputNode() != null && network.getInputNode().getNodeShape() != null) {
 			return getAxesArray(input, network.getInputNode().getNodeShape().length);
@@ -606,19 +1261,27 @@ public class GenericNetwork implements
 		// try it again with more tiles or smaller batches.
 		final Task modelExecutorTask = modelExecutor;
 		nTiles = tiling.getTilesNum();
-		if(oldNTiles == nTiles && oldBatchesSize == batchSize) {
+		if(oldNTiles == nTiles && oldBatchesSize == batchSize && oldTilesPerRun == tilesPerRun
+			&& oldInferenceWorkers == inferenceWorkers) {
 			modelExecutorTask.setFailed();
 			return false;
 		}
 		oldNTiles = nTiles;
 		oldBatchesSize = batchSize;
+		oldTilesPerRun = tilesPerRun;
+		oldInferenceWorkers = inferenceWorkers;
 
+		final StageMetrics executionMetrics = getStageMetrics("Execution");
+		if (executionMetrics != null) executionMetrics.addOutOfMemoryRetry();
 		handleOutOfMemoryError();
 		initTiling();
 		nTiles = tiling.getTilesNum();
+		saveCheckpointPlan();
 		modelExecutorTask.logError(
 			"Out of memory exception occurred. Trying with " + nTiles +
-				" tiles, batch size " + batchSize + " and overlap " + overlap + "...");
+				" tiles, batch size " + batchSize + ", " + tilesPerRun +
+				" tile(s) per run, " + getInferenceWorkers() +
+				" concurrent run(s) and overlap " + overlap + "...");
 
 		modelExecutorTask.startNewIteration();
 		inputTiler.addIteration();
@@ -626,6 +1289,15 @@ public class GenericNetwork implements
 	}
 
 	protected void handleOutOfMemoryError() {
+		if (tilesPerRun > 1) {
+			tilesPerRun /= 2;
+			return;
+		}
+		// with worker processes, each worker runs one tile at a time anyway
+		if (workerPool == null && inferenceWorkers > 1) {
+			inferenceWorkers /= 2;
+			return;
+		}
 		batchSize /= 2;
 		if (batchSize < 1) {
 			batchSize = 1;
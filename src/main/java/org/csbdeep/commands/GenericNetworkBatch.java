@@ -0,0 +1,315 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.commands;
+
+import io.scif.services.DatasetIOService;
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imglib2.type.numeric.real.FloatType;
+import org.csbdeep.io.CachedDatasetOpener;
+import org.csbdeep.tiling.OutputSink;
+import org.scijava.ItemIO;
+import org.scijava.command.Command;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs a network on all images of a directory. The pipeline is set up once:
+ * one {@link GenericNetwork} with its task manager, network and loaded model
+ * processes all images. The next image is read while the current one is
+ * processed and the results are written while the next image is processed.
+ */
+@Plugin(type = Command.class,
+	menuPath = "Plugins>CSBDeep>Run your network on a directory", headless = true)
+public class GenericNetworkBatch implements Command {
+
+	@Parameter(label = "Input directory", style = "directory")
+	protected File inputDirectory;
+
+	@Parameter(label = "File name filter (regular expression)")
+	protected String fileFilter = ".*\\.tiff?";
+
+	@Parameter(label = "Output directory", style = "directory")
+	protected File outputDirectory;
+
+	@Parameter(label = "Load images lazily (for images larger than memory)")
+	protected boolean loadLazily = false;
+
+	@Parameter(label = "Import model (.zip)", required = false)
+	protected File modelFile;
+
+	@Parameter(label = "Import model (.zip) from URL", required = false)
+	protected String modelUrl;
+
+	@Parameter
+	protected boolean normalizeInput = true;
+	@Parameter
+	protected float percentileBottom = 3.0f;
+	@Parameter
+	protected float percentileTop = 99.8f;
+
+	@Parameter(label = "Clip normalization")
+	protected boolean clip = false;
+
+	@Parameter(label = "Number of tiles", min = "1")
+	protected int nTiles = 8;
+
+	@Parameter(label = "Tile size has to be a multiple of", min = "1")
+	protected int blockMultiple = 32;
+
+	@Parameter(label = "Overlap between tiles", min = "0", stepSize = "16")
+	protected int overlap = 32;
+
+	@Parameter(label = "Batch size", min = "1")
+	protected int batchSize = 1;
+
+	@Parameter(label = "Number of tiles per network run", min = "1")
+	protected int tilesPerRun = 1;
+
+	@Parameter(type = ItemIO.OUTPUT)
+	protected List<File> outputFiles = new ArrayList<>();
+
+	@Parameter
+	protected DatasetIOService datasetIOService;
+
+	@Parameter
+	protected LogService log;
+
+	@Override
+	public void run() {
+		if (inputDirectory == null || !inputDirectory.isDirectory()) {
+			log.error("Input directory does not exist: " + inputDirectory);
+			return;
+		}
+		if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
+			log.error("Could not create output directory " + outputDirectory);
+			return;
+		}
+		final File[] files = inputDirectory.listFiles((dir, name) -> name.matches(
+			fileFilter));
+		if (files == null || files.length == 0) {
+			log.warn("No files matching " + fileFilter + " in " + inputDirectory);
+			return;
+		}
+		Arrays.sort(files);
+		processFiles(Arrays.asList(files));
+	}
+
+	/**
+	 * Processes the files and saves the results to the output directory.
+	 */
+	public void processFiles(final List<File> files) {
+		final List<Callable<Dataset>> sources = new ArrayList<>();
+		final List<String> names = new ArrayList<>();
+		for (final File file : files) {
+			names.add(file.getAbsolutePath());
+			sources.add(() -> {
+				log.info("Reading " + file.getAbsolutePath());
+				if (loadLazily) {
+					return CachedDatasetOpener.open(datasetIOService.getContext(), file
+						.getAbsolutePath());
+				}
+				return datasetIOService.open(file.getAbsolutePath());
+			});
+		}
+		process(sources, names, true, (index, result) -> {
+			final String name = baseName(files.get(index));
+			for (int i = 0; i < result.size(); i++) {
+				final String suffix = result.size() > 1 ? "_" + i : "";
+				final File outputFile = new File(outputDirectory, name + suffix +
+					".tif");
+				try {
+					datasetIOService.save(result.get(i), outputFile.getAbsolutePath());
+					synchronized (outputFiles) {
+						outputFiles.add(outputFile);
+					}
+				}
+				catch (final IOException e) {
+					log.error("Could not save " + outputFile.getAbsolutePath(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Processes the datasets and returns the results in the same order. Results
+	 * written to disk ({@link #loadLazily}) stay on disk until the JVM exits.
+	 */
+	public List<List<Dataset>> processDatasets(final List<Dataset> inputs) {
+		final List<Callable<Dataset>> sources = new ArrayList<>();
+		final List<String> names = new ArrayList<>();
+		final List<List<Dataset>> results = new ArrayList<>();
+		for (final Dataset input : inputs) {
+			sources.add(() -> input);
+			names.add(input.getName());
+			results.add(null);
+		}
+		process(sources, names, false, results::set);
+		return results;
+	}
+
+	/**
+	 * Runs the command on one source after the other. A source which cannot be
+	 * read or processed is reported with its name and skipped.
+	 */
+	private void process(final List<Callable<Dataset>> sources,
+		final List<String> names, final boolean disposeOutput,
+		final BiConsumer<Integer, List<Dataset>> resultConsumer)
+	{
+		if (sources.isEmpty()) return;
+		final GenericNetwork command = createCommand();
+		final ExecutorService readPool = Executors.newSingleThreadExecutor();
+		final ExecutorService writePool = Executors.newSingleThreadExecutor();
+		try {
+			Future<Dataset> next = readPool.submit(sources.get(0));
+			Future<?> written = null;
+			for (int i = 0; i < sources.size(); i++) {
+				final Future<Dataset> current = next;
+				next = i + 1 < sources.size() ? readPool.submit(sources.get(i + 1))
+					: null;
+				final Dataset input;
+				try {
+					input = current.get();
+				}
+				catch (final ExecutionException e) {
+					log.error("Could not read " + names.get(i), e.getCause());
+					continue;
+				}
+				if (input == null) continue;
+				final List<Dataset> result = process(command, input, names.get(i));
+				// the next image gets its own output files
+				final OutputSink<FloatType> sink = command.detachOutputSink();
+				if (result == null) {
+					if (disposeOutput && sink != null) sink.dispose();
+					continue;
+				}
+				// keep at most one result waiting to be written
+				if (written != null) written.get();
+				final int index = i;
+				written = writePool.submit(() -> {
+					try {
+						resultConsumer.accept(index, result);
+					}
+					finally {
+						if (disposeOutput && sink != null) sink.dispose();
+					}
+				});
+			}
+			if (written != null) written.get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final ExecutionException e) {
+			log.error(e.getCause());
+		}
+		finally {
+			readPool.shutdownNow();
+			writePool.shutdown();
+			try {
+				writePool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			command.dispose();
+		}
+	}
+
+	/**
+	 * @return the results or null if processing the input failed
+	 */
+	private List<Dataset> process(final GenericNetwork command,
+		final Dataset input, final String name)
+	{
+		try {
+			return command.process(input);
+		}
+		catch (final RuntimeException e) {
+			log.error("Could not process " + name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the command which runs the network on all inputs of the batch.
+	 */
+	protected GenericNetwork createCommand() {
+		final GenericNetwork command = new GenericNetwork();
+		datasetIOService.getContext().inject(command);
+		command.initialize();
+		if (modelFile != null) command.setModelFile(modelFile);
+		if (modelUrl != null && !modelUrl.isEmpty()) command.setModelUrl(
+			modelUrl);
+		command.normalizeInput = normalizeInput;
+		command.percentileBottom = percentileBottom;
+		command.percentileTop = percentileTop;
+		command.clip = clip;
+		command.nTiles = nTiles;
+		command.blockMultiple = blockMultiple;
+		command.overlap = overlap;
+		command.batchSize = batchSize;
+		command.tilesPerRun = tilesPerRun;
+		command.writeOutputToDisk = loadLazily;
+		command.showProgressDialog = false;
+		return command;
+	}
+
+	private static String baseName(final File file) {
+		final String name = file.getName();
+		final int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	public static void main(final String... args) throws Exception {
+		// create the ImageJ application context with all available services
+		final ImageJ ij = new ImageJ();
+
+		ij.launch(args);
+
+		// invoke the plugin
+		ij.command().run(GenericNetworkBatch.class, true);
+
+	}
+}
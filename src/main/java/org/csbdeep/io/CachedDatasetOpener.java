@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.io;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.scijava.Context;
+
+import io.scif.config.SCIFIOConfig;
+import io.scif.img.ImgOpener;
+import io.scif.img.SCIFIOImgPlus;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+
+/**
+ * Opens images as cell images which load their planes from disk when they
+ * are accessed and keep only recently used planes in memory. Tiling and
+ * normalization only work on views of the input, so datasets opened this way
+ * can be processed even if they don't fit into memory.
+ */
+public class CachedDatasetOpener {
+
+	public static Dataset open(final Context context, final String path)
+		throws IOException
+	{
+		final SCIFIOConfig config = new SCIFIOConfig().imgOpenerSetImgModes(
+			SCIFIOConfig.ImgMode.CELL);
+		final List<SCIFIOImgPlus<?>> imgs;
+		try {
+			imgs = new ImgOpener(context).openImgs(path, config);
+		}
+		catch (final Exception e) {
+			throw new IOException("Could not open " + path, e);
+		}
+		if (imgs.isEmpty()) throw new IOException("No image found in " + path);
+		final DatasetService datasetService = context.getService(
+			DatasetService.class);
+		return datasetService.create((ImgPlus) imgs.get(0));
+	}
+
+}
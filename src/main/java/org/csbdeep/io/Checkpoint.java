@@ -0,0 +1,376 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.csbdeep.normalize.NormalizationStatisticsCache;
+import org.csbdeep.tiling.CompletedTiles;
+import org.scijava.log.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Stores the progress of a run in a directory so that a run which got
+ * interrupted, e.g. because the JVM was killed, can be resumed. The directory
+ * holds the tiling plan, the normalization statistics and the result of every
+ * completed tile, together with the region of the input it covers. Since the
+ * tiles are stored by region, they can be restored even if the image gets
+ * tiled differently when resuming.
+ * <p>
+ * Everything is stored for a key, which has to identify the input, the model
+ * and all parameters affecting the output. Opening the checkpoint with a
+ * different key deletes the stored progress.
+ * </p>
+ */
+public class Checkpoint {
+
+	private static final String PLAN_FILE = "plan.json";
+	private static final String TILE_PREFIX = "tile-";
+	private static final String TILE_SUFFIX = ".bin";
+
+	private final File directory;
+	private final NormalizationStatisticsCache normalizationCache;
+	private final Gson gson = new Gson();
+	private final AtomicInteger nextTile = new AtomicInteger();
+	private String key = null;
+	private Plan plan = null;
+	private Logger logger;
+
+	public static class Plan {
+
+		private String key;
+		private int nTiles;
+		private int batchSize;
+		private int tilesPerRun;
+
+		public int getNTiles() {
+			return nTiles;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public int getTilesPerRun() {
+			return tilesPerRun;
+		}
+	}
+
+	public Checkpoint(final File directory) {
+		this.directory = directory;
+		normalizationCache = new NormalizationStatisticsCache(directory);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Set where failures to read or write tiles are reported.
+	 */
+	public void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * @return the MD5 hash of the given parts, to be used as key
+	 */
+	public static String createKey(final String... parts) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("MD5");
+			for (final String part : parts) {
+				digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+			}
+			return Hex.encodeHexString(digest.digest());
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Opens the checkpoint for the given key. Progress stored for a different
+	 * key is deleted.
+	 *
+	 * @return true if there is stored progress to resume from
+	 */
+	public boolean open(final String key) throws IOException {
+		this.key = key;
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create checkpoint directory " +
+				directory);
+		}
+		plan = readPlan();
+		if (plan != null && key.equals(plan.key)) {
+			int next = 0;
+			for (final File file : getTileFiles()) {
+				next = Math.max(next, getSequenceNumber(file) + 1);
+			}
+			nextTile.set(next);
+			return true;
+		}
+		plan = null;
+		clear();
+		return false;
+	}
+
+	/**
+	 * @return the stored tiling plan, or null if there is none
+	 */
+	public Plan getPlan() {
+		return plan;
+	}
+
+	public void savePlan(final int nTiles, final int batchSize,
+		final int tilesPerRun) throws IOException
+	{
+		final Plan plan = new Plan();
+		plan.key = key;
+		plan.nTiles = nTiles;
+		plan.batchSize = batchSize;
+		plan.tilesPerRun = tilesPerRun;
+		final File tmp = File.createTempFile(PLAN_FILE, ".tmp", directory);
+		try (Writer writer = Files.newBufferedWriter(tmp.toPath(),
+			StandardCharsets.UTF_8))
+		{
+			gson.toJson(plan, writer);
+		}
+		Files.move(tmp.toPath(), new File(directory, PLAN_FILE).toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+		this.plan = plan;
+	}
+
+	/**
+	 * @return the cache which keeps the normalization statistics in the
+	 *         checkpoint directory. It also computes the input key, so the
+	 *         input is hashed only once per run.
+	 */
+	public NormalizationStatisticsCache getNormalizationCache() {
+		return normalizationCache;
+	}
+
+	/**
+	 * Restores the completed tiles of the input with the given index. Tiles
+	 * which get completed afterwards are stored in the checkpoint.
+	 */
+	public CompletedTiles restore(final int inputIndex) {
+		final CompletedTiles completed = new CompletedTiles();
+		for (final File file : getTileFiles()) {
+			if (getInputIndex(file) != inputIndex) continue;
+			try {
+				readTile(file, completed);
+			}
+			catch (final IOException e) {
+				// the tile gets processed again
+				warn("Could not restore tile " + file.getName(), e);
+				file.delete();
+			}
+		}
+		completed.setListener((region, output, destination) -> {
+			try {
+				writeTile(inputIndex, region, output, destination);
+			}
+			catch (final IOException e) {
+				// the run continues, the tile just has to be processed again when
+				// resuming
+				warn("Could not store tile in checkpoint", e);
+			}
+		});
+		return completed;
+	}
+
+	/**
+	 * Deletes everything stored in the checkpoint directory.
+	 */
+	public void clear() {
+		for (final File file : getTileFiles()) {
+			file.delete();
+		}
+		new File(directory, PLAN_FILE).delete();
+		final File[] normalization = getNormalizationCache().getDirectory()
+			.listFiles();
+		if (normalization != null) {
+			for (final File file : normalization) {
+				file.delete();
+			}
+		}
+		nextTile.set(0);
+	}
+
+	private void warn(final String message, final Exception e) {
+		if (logger != null) logger.warn(message + ": " + e.getMessage());
+	}
+
+	private Plan readPlan() {
+		final File file = new File(directory, PLAN_FILE);
+		if (!file.exists()) return null;
+		try (Reader reader = Files.newBufferedReader(file.toPath(),
+			StandardCharsets.UTF_8))
+		{
+			return gson.fromJson(reader, Plan.class);
+		}
+		catch (IOException | JsonParseException e) {
+			return null;
+		}
+	}
+
+	private File[] getTileFiles() {
+		final File[] files = directory.listFiles((dir, name) -> name.startsWith(
+			TILE_PREFIX) && name.endsWith(TILE_SUFFIX));
+		if (files == null) return new File[0];
+		Arrays.sort(files, Comparator.comparing(File::getName));
+		return files;
+	}
+
+	private static int getInputIndex(final File file) {
+		final String name = file.getName();
+		return Integer.parseInt(name.substring(TILE_PREFIX.length(), name.indexOf(
+			'-', TILE_PREFIX.length())));
+	}
+
+	private static int getSequenceNumber(final File file) {
+		final String name = file.getName();
+		return Integer.parseInt(name.substring(name.indexOf('-', TILE_PREFIX
+			.length()) + 1, name.length() - TILE_SUFFIX.length()));
+	}
+
+	private void writeTile(final int inputIndex, final Interval region,
+		final Img<FloatType> output, final Interval destination) throws IOException
+	{
+		final String name = String.format("%s%d-%08d%s", TILE_PREFIX, inputIndex,
+			nextTile.getAndIncrement(), TILE_SUFFIX);
+		// write to a temporary file first, tiles of a killed run must not be
+		// restored partially
+		final File tmp = File.createTempFile(name, ".tmp", directory);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(tmp))))
+		{
+			writeInterval(out, region);
+			writeLongs(out, Intervals.dimensionsAsLongArray(output));
+			writeInterval(out, destination);
+			if (!Intervals.isEmpty(destination)) {
+				for (final FloatType value : Views.flatIterable(Views.interval(output,
+					destination)))
+				{
+					out.writeFloat(value.get());
+				}
+			}
+		}
+		Files.move(tmp.toPath(), new File(directory, name).toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void readTile(final File file, final CompletedTiles completed)
+		throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(file))))
+		{
+			final Interval region = readInterval(in);
+			final long[] outputDims = readLongs(in);
+			final Interval destination = readInterval(in);
+			Img<FloatType> output = completed.getOutput();
+			if (output == null) {
+				output = Util.getArrayOrCellImgFactory(new FinalInterval(outputDims),
+					new FloatType()).create(outputDims);
+				completed.setOutput(output);
+			}
+			if (!Intervals.isEmpty(destination)) {
+				final Cursor<FloatType> cursor = Views.flatIterable(Views.interval(
+					output, destination)).cursor();
+				while (cursor.hasNext()) {
+					cursor.next().set(in.readFloat());
+				}
+			}
+			completed.add(region);
+		}
+	}
+
+	private static void writeInterval(final DataOutputStream out,
+		final Interval interval) throws IOException
+	{
+		writeLongs(out, Intervals.minAsLongArray(interval));
+		writeLongs(out, Intervals.maxAsLongArray(interval));
+	}
+
+	private static Interval readInterval(final DataInputStream in)
+		throws IOException
+	{
+		return new FinalInterval(readLongs(in), readLongs(in));
+	}
+
+	private static void writeLongs(final DataOutputStream out,
+		final long[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (final long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private static long[] readLongs(final DataInputStream in) throws IOException {
+		final long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+}
@@ -29,9 +29,16 @@ public class DefaultInputProcessor<T extends RealType<T>> extends DefaultTask
 			", converting to FloatType.");
 		DatasetHelper.logDim(this, "Dataset dimensions", input);
 
-		RandomAccessibleInterval<FloatType> rai = Converters.convert(
-			(RandomAccessibleInterval) input.getImgPlus(),
-			new RealFloatConverter<T>(), new FloatType());
+		// only wrap the input into views, it might be loaded lazily from disk and
+		// the tiles should only load the parts of the image they cover
+		RandomAccessibleInterval<FloatType> rai;
+		if (input.getType() instanceof FloatType) {
+			rai = (RandomAccessibleInterval) input.getImgPlus();
+		}
+		else {
+			rai = Converters.convert((RandomAccessibleInterval) input.getImgPlus(),
+				new RealFloatConverter<T>(), new FloatType());
+		}
 
 		// Add dimensions until it fits the input tensor
 		while (rai.numDimensions() < numDimensions) {
@@ -2,13 +2,18 @@
 package org.csbdeep.network;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 import org.csbdeep.network.model.Network;
 import org.csbdeep.task.DefaultTask;
 import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.OutputSink;
+import org.csbdeep.tiling.Tiling;
 import org.csbdeep.util.DatasetHelper;
+import net.imagej.axis.AxisType;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
 
@@ -20,6 +25,9 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 	private ExecutorService pool = null;
 	private Network network = null;
 	private boolean canceled = false;
+	private Function<AdvancedTiledView<T>, OutputSink<T>> sinkFactory = null;
+	private Tiling<T> tiling = null;
+	private AxisType[] outputAxes = null;
 
 	@Override
 	public List<AdvancedTiledView<T>> run(final List<AdvancedTiledView<T>> input,
@@ -45,7 +53,7 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 			}
 			pool.shutdown();
 			if(isCanceled()) return null;
-			if (output.size() > 0) {
+			if (output.size() > 0 && output.get(0).getProcessedTiles().size() > 0) {
 				DatasetHelper.logDim(this, "Network output size", output.get(0)
 						.getProcessedTiles().get(0));
 			}
@@ -55,6 +63,21 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 		return null;
 	}
 
+	/**
+	 * Completed tiles of a resumed run are not processed again, so they are
+	 * not part of the progress either.
+	 */
+	private void skipCompletedSteps(final OutputSink<T> sink,
+		final AdvancedTiledView<T> input)
+	{
+		final int numTiles = getSteps(Collections.singletonList(input));
+		int completed = 0;
+		for (int i = 0; i < numTiles; i++) {
+			if (sink.isCompleted(i)) completed++;
+		}
+		if (completed > 0) setNumSteps(numSteps() - completed);
+	}
+
 	private int getSteps(List<AdvancedTiledView<T>> input) {
 		int numSteps = 0;
 		for (AdvancedTiledView<T> tile : input) {
@@ -72,14 +95,26 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 	{
 
 		input.getProcessedTiles().clear();
+		OutputSink<T> outputSink = null;
 
 		try {
 			network.setTiledView(input);
+			outputSink = sinkFactory == null ? null : sinkFactory.apply(input);
+			final OutputSink<T> sink = outputSink;
+			input.setPaddingRemoved(sink != null);
+			input.setMergedOutput(null);
+			network.setTileResultHandler(sink == null ? null : tile -> sink.store(
+				tiling.removePadding((RandomAccessibleInterval<T>) tile, input
+					.getOverlapComplete(), input.getOriginalAxes(), outputAxes)));
+			network.setTileFilter(sink == null ? null : index -> !sink.isCompleted(
+				index));
+			if (sink != null) skipCompletedSteps(sink, input);
 			Future<List<RandomAccessibleInterval<T>>> resultFuture = pool.submit(network);
 			if(resultFuture != null) {
 				List<RandomAccessibleInterval<T>> result = resultFuture.get();
 				if(result != null) {
 					input.getProcessedTiles().addAll(result);
+					if (outputSink != null) input.setMergedOutput(outputSink.getOutput());
 				}
 			}
 
@@ -90,6 +125,10 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 		}
 		catch (final ExecutionException | IllegalStateException exc) {
 			exc.printStackTrace();
+			// keep the tiles completed so far, unless the sink already merged them
+			if (outputSink == null || outputSink.getOutput() == null) {
+				input.getProcessedTiles().addAll(network.getCompletedTiles());
+			}
 			setIdle();
 			throw new OutOfMemoryError();
 		}
@@ -103,6 +142,16 @@ public class DefaultModelExecutor<T extends RealType<T>> extends DefaultTask
 		return input;
 	}
 
+	@Override
+	public void setOutputSink(
+		final Function<AdvancedTiledView<T>, OutputSink<T>> sinkFactory,
+		final Tiling<T> tiling, final AxisType[] outputAxes)
+	{
+		this.sinkFactory = sinkFactory;
+		this.tiling = tiling;
+		this.outputAxes = outputAxes;
+	}
+
 	@Override
 	public boolean isCanceled() {
 		return canceled;
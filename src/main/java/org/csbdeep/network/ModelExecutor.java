@@ -2,12 +2,16 @@
 package org.csbdeep.network;
 
 import java.util.List;
+import java.util.function.Function;
 
 import org.csbdeep.network.model.Network;
 import org.scijava.Cancelable;
 
 import org.csbdeep.task.Task;
 import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.OutputSink;
+import org.csbdeep.tiling.Tiling;
+import net.imagej.axis.AxisType;
 import net.imglib2.type.numeric.RealType;
 
 public interface ModelExecutor<T extends RealType<T>> extends Task, Cancelable {
@@ -15,4 +19,13 @@ public interface ModelExecutor<T extends RealType<T>> extends Task, Cancelable {
 	List<AdvancedTiledView<T>> run(List<AdvancedTiledView<T>> input,
 		Network network);
 
+	/**
+	 * Set where the tile results go as soon as they are computed. The factory
+	 * is asked for a sink for every tiled input at the start of its run. The
+	 * padding gets removed from the tiles before they are passed to the sink.
+	 * If the factory is null or returns null, the results are kept in memory.
+	 */
+	void setOutputSink(Function<AdvancedTiledView<T>, OutputSink<T>> sinkFactory,
+		Tiling<T> tiling, AxisType[] outputAxes);
+
 }
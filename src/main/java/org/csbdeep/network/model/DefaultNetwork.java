@@ -2,22 +2,39 @@
 package org.csbdeep.network.model;
 
 import java.io.FileNotFoundException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.UnaryOperator;
 
 import org.scijava.io.location.Location;
 
 import org.csbdeep.imglib2.TiledView;
+import org.csbdeep.task.StageMetrics;
+import org.csbdeep.tiling.BackgroundTiles;
+import org.csbdeep.tiling.TileResultCache;
 import org.csbdeep.task.Task;
 import org.csbdeep.util.IOHelper;
 import net.imagej.Dataset;
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.Img;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 public abstract class DefaultNetwork<T extends RealType<T>> implements
@@ -31,7 +48,26 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 	protected boolean supportsGPU = false;
 	protected Integer doneTileCount;
 	protected boolean dropSingletonDims = false;
+	protected int pipelineDepth = 4;
+	protected int tilesPerRun = 1;
+	protected int inferenceWorkers = 1;
+	protected UnaryOperator<RandomAccessibleInterval<T>> tileResultHandler;
+	protected IntPredicate tileFilter;
+	protected StageMetrics metrics;
+	protected BackgroundTiles backgroundTiles;
+	protected TileResultCache tileCache;
+	protected String tileCachePrefix;
+	// model output size per input tile size, learned from processed tiles
+	private final Map<List<Long>, long[]> outputSizes =
+		new ConcurrentHashMap<>();
+	private final AtomicInteger skippedTiles = new AtomicInteger();
+	private final AtomicInteger cachedTiles = new AtomicInteger();
+	private List<RandomAccessibleInterval<T>> completedTiles = Collections
+		.emptyList();
 	ExecutorService pool;
+	private ExecutorService prefetchPool;
+	private ExecutorService collectPool;
+	private AtomicBoolean aborted;
 
 	public DefaultNetwork(Task associatedTask) {
 		this.status = associatedTask;
@@ -62,57 +98,493 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 		throws ExecutionException
 	{
 
-		pool = Executors.newSingleThreadExecutor();
-
-		final boolean multithreading = false;
+		// The tiles run through three stages: preparing the model input (e.g.
+		// converting the tile into a tensor), running the model and converting
+		// the model output back into an image. The stages run on separate pools
+		// so that the next tiles are prepared while the model is busy. The
+		// results are collected on a single thread in the order of the tiles,
+		// even if several model runs happen at the same time.
+		final int workers = getInferenceWorkers();
+		final int depth = Math.max(pipelineDepth, 2 * workers);
+		prefetchPool = Executors.newFixedThreadPool(Math.max(1, Math.min(
+			depth, Runtime.getRuntime().availableProcessors())));
+		pool = workers > 1 ? Executors.newFixedThreadPool(workers) : Executors
+			.newSingleThreadExecutor();
+		collectPool = Executors.newSingleThreadExecutor();
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		this.aborted = aborted;
 
 		final Cursor<RandomAccessibleInterval<T>> cursor = Views.iterable(tiledView)
 			.cursor();
 
 		// Loop over the tiles and execute the prediction
 		final List<RandomAccessibleInterval<T>> results = new ArrayList<>();
-		final List<Future<RandomAccessibleInterval<T>>> futures = new ArrayList<>();
+		skippedTiles.set(0);
+		cachedTiles.set(0);
+		completedTiles = results;
+
+		// tile groups currently traveling through the pipeline, in tile order
+		final Queue<Future<List<RandomAccessibleInterval<T>>>> inFlight =
+			new ArrayDeque<>();
+
+		final int groupSize = canBatchTiles() ? tilesPerRun : 1;
+		final IntPredicate filter = tileFilter;
+		int tileIndex = 0;
+
+		try {
+			while (cursor.hasNext()) {
+				final List<RandomAccessibleInterval<T>> group = new ArrayList<>();
+				while (cursor.hasNext() && group.size() < groupSize) {
+					final RandomAccessibleInterval<T> tile = cursor.next();
+					// completed tiles are not part of the progress, see
+					// DefaultModelExecutor
+					if (filter != null && !filter.test(tileIndex++)) continue;
+					group.add(tile);
+				}
+				for (final List<RandomAccessibleInterval<T>> batch : splitByShape(
+					group))
+				{
+					inFlight.add(submitToPipeline(batch, aborted));
+				}
+				while (inFlight.size() >= depth) {
+					if (!collectNext(inFlight, results, aborted)) return null;
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				if (!collectNext(inFlight, results, aborted)) return null;
+			}
+		}
+		catch (final InterruptedException exc) {
+			aborted.set(true);
+			shutdownPipeline(true);
+			fail();
+			return null;
+		}
+		catch (final ExecutionException exc) {
+			// let the remaining stages release their resources without doing any
+			// further work
+			aborted.set(true);
+			throw exc;
+		}
+		finally {
+			shutdownPipeline(false);
+		}
 
-		while (cursor.hasNext()) {
-			final RandomAccessibleInterval<T> tile = cursor.next();
+		if (skippedTiles.get() > 0) {
+			log("Skipped " + skippedTiles.get() + " background tile(s)");
+		}
+		if (cachedTiles.get() > 0) {
+			log("Reused " + cachedTiles.get() + " cached tile result(s)");
+		}
+		return results;
+	}
 
-			final Future<RandomAccessibleInterval<T>> future = pool.submit(() -> execute(tile));
+	private Future<List<RandomAccessibleInterval<T>>> submitToPipeline(
+		final List<RandomAccessibleInterval<T>> tiles, final AtomicBoolean aborted)
+	{
+		final StageMetrics metrics = this.metrics;
+		final BackgroundTiles background = backgroundTiles;
+		final TileResultCache cache = tileCache;
+		final String cachePrefix = tileCachePrefix;
+		// filled by the first stage, read by the last one
+		final String[] cacheKeys = new String[tiles.size()];
+		final Future<Object> prepared = prefetchPool.submit(() -> {
+			if (aborted.get()) return null;
+			final List<RandomAccessibleInterval<T>> backgroundResults =
+				background == null ? null : createBackgroundResults(background, tiles);
+			if (backgroundResults != null) {
+				skippedTiles.addAndGet(tiles.size());
+				return new Precomputed<>(backgroundResults);
+			}
+			if (cache != null && cachePrefix != null) {
+				final List<RandomAccessibleInterval<T>> cached = getCachedResults(
+					cache, cachePrefix, tiles, cacheKeys);
+				if (cached != null) {
+					cachedTiles.addAndGet(tiles.size());
+					return new Precomputed<>(cached);
+				}
+			}
+			final long start = System.nanoTime();
+			final Object input = prepareInput(stackTiles(tiles));
+			if (metrics != null) metrics.addConversionTime(System.nanoTime() - start);
+			return input;
+		});
+		final Future<Object> executed = pool.submit(() -> {
+			final Object input = await(prepared);
+			if (input instanceof Precomputed) return input;
+			try {
+				if (aborted.get() || input == null) return null;
+				final long start = System.nanoTime();
+				final Object output = runModel(input);
+				if (metrics != null) metrics.addRunTime(System.nanoTime() - start);
+				return output;
+			}
+			finally {
+				release(input);
+			}
+		});
+		final UnaryOperator<RandomAccessibleInterval<T>> handler =
+			tileResultHandler;
+		return collectPool.submit(() -> {
+			final Object output = await(executed);
+			if (output instanceof Precomputed) {
+				if (aborted.get()) return null;
+				return handle(handler, ((Precomputed<T>) output).results);
+			}
+			try {
+				if (aborted.get() || output == null) return null;
+				final long start = System.nanoTime();
+				final RandomAccessibleInterval<T> result = collectOutput(output,
+					tiles.get(0));
+				if (result == null) return null;
+				if (metrics != null) {
+					metrics.addConversionTime(System.nanoTime() - start);
+					addTileMetrics(metrics, tiles, result);
+				}
+				final List<RandomAccessibleInterval<T>> tileResults = unstackResult(
+					result, tiles.size());
+				outputSizes.putIfAbsent(sizeKey(tiles.get(0)), Intervals
+					.dimensionsAsLongArray(tileResults.get(0)));
+				if (cache != null && cachePrefix != null) {
+					// before the handler, which might move the results elsewhere
+					for (int i = 0; i < tileResults.size(); i++) {
+						if (cacheKeys[i] != null) {
+							cache.put(cacheKeys[i], tileResults.get(i));
+						}
+					}
+				}
+				// the collect pool has a single thread, so the handler sees the
+				// tiles in order and before the model output gets released
+				return handle(handler, tileResults);
+			}
+			finally {
+				release(output);
+			}
+		});
+	}
 
-			log("Processing tile " + (doneTileCount + 1) + "..");
+	private static <T> List<RandomAccessibleInterval<T>> handle(
+		final UnaryOperator<RandomAccessibleInterval<T>> handler,
+		final List<RandomAccessibleInterval<T>> tileResults)
+	{
+		if (handler == null) return tileResults;
+		final List<RandomAccessibleInterval<T>> handled = new ArrayList<>();
+		for (final RandomAccessibleInterval<T> tileResult : tileResults) {
+			handled.add(handler.apply(tileResult));
+		}
+		return handled;
+	}
 
-			futures.add(future);
+	/**
+	 * A group of tiles is skipped if all of them are background and the model
+	 * already processed a tile of the same size, so the size of the result is
+	 * known.
+	 *
+	 * @return the results of the tiles or null if the group has to be run
+	 */
+	private List<RandomAccessibleInterval<T>> createBackgroundResults(
+		final BackgroundTiles background,
+		final List<RandomAccessibleInterval<T>> tiles)
+	{
+		final long[] outputSize = outputSizes.get(sizeKey(tiles.get(0)));
+		if (outputSize == null) return null;
+		for (final RandomAccessibleInterval<T> tile : tiles) {
+			if (!background.isBackground(tile)) return null;
+		}
+		final List<RandomAccessibleInterval<T>> res = new ArrayList<>();
+		for (final RandomAccessibleInterval<T> tile : tiles) {
+			final RandomAccessibleInterval<T> result = background.createResult(tile,
+				outputSize);
+			if (result == null) return null;
+			res.add(result);
+		}
+		return res;
+	}
 
-			if (!multithreading) {
-				try {
-					final RandomAccessibleInterval<T> res = future.get();
-					if (res == null) return null;
-					results.add(res);
-					upTileCount();
-				}
-				catch (final InterruptedException exc) {
-					pool.shutdownNow();
-					fail();
-					return null;
-				}
+	/**
+	 * Computes the cache keys of the tiles.
+	 *
+	 * @return the cached results if all tiles are cached, null otherwise
+	 */
+	private List<RandomAccessibleInterval<T>> getCachedResults(
+		final TileResultCache cache, final String prefix,
+		final List<RandomAccessibleInterval<T>> tiles, final String[] keys)
+	{
+		List<RandomAccessibleInterval<T>> res = new ArrayList<>();
+		for (int i = 0; i < tiles.size(); i++) {
+			final RandomAccessibleInterval<T> tile = tiles.get(i);
+			keys[i] = cache.getKey(prefix, tile);
+			if (res == null) continue;
+			final Img<FloatType> cached = cache.get(keys[i]);
+			if (cached == null) {
+				res = null;
+				continue;
 			}
+			final T type = Util.getTypeFromInterval(tile).createVariable();
+			// Img is also an IterableInterval, the cast picks the overload
+			res.add(Converters.convert((RandomAccessibleInterval<FloatType>) cached,
+				(in, out) -> out.setReal(in.getRealFloat()), type));
 		}
-		if (multithreading) {
-			for (final Future<RandomAccessibleInterval<T>> future : futures) {
-				try {
-					final RandomAccessibleInterval<T> res = future.get();
-					if (res == null) return null;
-					results.add(res);
-					upTileCount();
-				}
-				catch (final InterruptedException exc) {
-					pool.shutdownNow();
-					fail();
-					return null;
-				}
+		return res;
+	}
+
+	private static List<Long> sizeKey(final RandomAccessibleInterval<?> tile) {
+		final List<Long> res = new ArrayList<>();
+		for (final long size : Intervals.dimensionsAsLongArray(tile)) {
+			res.add(size);
+		}
+		return res;
+	}
+
+	private static void addTileMetrics(final StageMetrics metrics,
+		final List<? extends RandomAccessibleInterval<?>> tiles,
+		final RandomAccessibleInterval<?> result)
+	{
+		long voxels = 0;
+		for (final RandomAccessibleInterval<?> tile : tiles) {
+			voxels += Intervals.numElements(tile);
+		}
+		// the model reads and writes float tensors
+		final long bytes = (voxels + Intervals.numElements(result)) * Float.BYTES;
+		metrics.addTiles(tiles.size(), voxels, bytes);
+	}
+
+	private boolean collectNext(
+		final Queue<Future<List<RandomAccessibleInterval<T>>>> inFlight,
+		final List<RandomAccessibleInterval<T>> results,
+		final AtomicBoolean aborted) throws InterruptedException,
+		ExecutionException
+	{
+		log("Processing tile " + (doneTileCount + 1) + "..");
+		final List<RandomAccessibleInterval<T>> res = await(inFlight.poll());
+		if (res == null) {
+			aborted.set(true);
+			return false;
+		}
+		for (final RandomAccessibleInterval<T> tileResult : res) {
+			results.add(tileResult);
+			upTileCount();
+		}
+		return true;
+	}
+
+	/**
+	 * Tiles can only be stacked into one model run if the network accepts an
+	 * arbitrary size in the first tensor dimension, both for its input and its
+	 * output.
+	 */
+	protected boolean canBatchTiles() {
+		return tilesPerRun > 1 && !dropSingletonDims && supportsTileBatching() &&
+			getBatchDimension(getInputNode()) >= 0 && getBatchDimension(
+				getOutputNode()) >= 0;
+	}
+
+	/**
+	 * @return true if the first dimension of the input and output tensor is a
+	 *         batch dimension of variable size
+	 */
+	protected boolean supportsTileBatching() {
+		return false;
+	}
+
+	/**
+	 * @return the image dimension mapped to the first tensor dimension of the
+	 *         given node, or -1 if there is none
+	 */
+	private static int getBatchDimension(final ImageTensor node) {
+		if (node == null) return -1;
+		final int[] mapping = node.getMappingIndices();
+		for (int i = 0; i < mapping.length; i++) {
+			if (mapping[i] == 0) return i;
+		}
+		return -1;
+	}
+
+	private List<List<RandomAccessibleInterval<T>>> splitByShape(
+		final List<RandomAccessibleInterval<T>> tiles)
+	{
+		final List<List<RandomAccessibleInterval<T>>> batches = new ArrayList<>();
+		List<RandomAccessibleInterval<T>> batch = null;
+		for (final RandomAccessibleInterval<T> tile : tiles) {
+			if (batch == null || !Intervals.equalDimensions(batch.get(0), tile)) {
+				batch = new ArrayList<>();
+				batches.add(batch);
 			}
+			batch.add(tile);
 		}
+		return batches;
+	}
 
-		return results;
+	private RandomAccessibleInterval<T> stackTiles(
+		final List<RandomAccessibleInterval<T>> tiles)
+	{
+		if (tiles.size() == 1) return tiles.get(0);
+		return Views.concatenate(getBatchDimension(getInputNode()), tiles);
+	}
+
+	private List<RandomAccessibleInterval<T>> unstackResult(
+		final RandomAccessibleInterval<T> result, final int numTiles)
+	{
+		if (numTiles == 1) return Collections.singletonList(result);
+		final int dim = getBatchDimension(getOutputNode());
+		final long size = result.dimension(dim) / numTiles;
+		final long[] min = Intervals.minAsLongArray(result);
+		final long[] max = Intervals.maxAsLongArray(result);
+		final List<RandomAccessibleInterval<T>> tileResults = new ArrayList<>();
+		for (int i = 0; i < numTiles; i++) {
+			min[dim] = result.min(dim) + i * size;
+			max[dim] = min[dim] + size - 1;
+			tileResults.add(Views.zeroMin(Views.interval(result, min, max)));
+		}
+		return tileResults;
+	}
+
+	private static <V> V await(final Future<V> future)
+		throws InterruptedException, ExecutionException
+	{
+		try {
+			return future.get();
+		}
+		catch (final ExecutionException exc) {
+			// unwrap failures of previous pipeline stages
+			if (exc.getCause() instanceof ExecutionException) {
+				throw (ExecutionException) exc.getCause();
+			}
+			throw exc;
+		}
+	}
+
+	private void shutdownPipeline(final boolean now) {
+		for (final ExecutorService service : new ExecutorService[] {
+			prefetchPool, pool, collectPool })
+		{
+			if (service == null) continue;
+			if (now) service.shutdownNow();
+			else service.shutdown();
+		}
+	}
+
+	/**
+	 * First pipeline stage, converts a tile into the input of
+	 * {@link #runModel(Object)}. Runs concurrently for multiple tiles.
+	 */
+	protected Object prepareInput(final RandomAccessibleInterval<T> tile)
+		throws Exception
+	{
+		return tile;
+	}
+
+	/**
+	 * Second pipeline stage, runs the model on a prepared input. Only one tile
+	 * is processed at a time, unless multiple inference workers are set and
+	 * {@link #supportsConcurrentRuns()} is true.
+	 */
+	protected Object runModel(final Object input) throws Exception {
+		return execute((RandomAccessibleInterval<T>) input);
+	}
+
+	/**
+	 * Third pipeline stage, converts the output of {@link #runModel(Object)}
+	 * into the result image of the given tile.
+	 */
+	protected RandomAccessibleInterval<T> collectOutput(final Object output,
+		final RandomAccessibleInterval<T> tile) throws Exception
+	{
+		return (RandomAccessibleInterval<T>) output;
+	}
+
+	/**
+	 * @return true if the tile results are passed to a tile result handler
+	 *         before the model output is released, in which case
+	 *         {@link #collectOutput(Object, RandomAccessibleInterval)} may return
+	 *         views of the model output or of reused buffers
+	 */
+	protected boolean hasTileResultHandler() {
+		return tileResultHandler != null;
+	}
+
+	/**
+	 * @return true if {@link #runModel(Object)} can be called from multiple
+	 *         threads at the same time
+	 */
+	protected boolean supportsConcurrentRuns() {
+		return false;
+	}
+
+	private int getInferenceWorkers() {
+		return supportsConcurrentRuns() ? inferenceWorkers : 1;
+	}
+
+	/**
+	 * Frees intermediate pipeline data once the next stage consumed it.
+	 */
+	protected void release(final Object data) {}
+
+	/**
+	 * Set how many tiles can be processed by the pipeline stages at the same
+	 * time. Higher values keep the model busy but need more memory.
+	 */
+	public void setPipelineDepth(final int pipelineDepth) {
+		this.pipelineDepth = Math.max(1, pipelineDepth);
+	}
+
+	@Override
+	public void setTilesPerRun(final int tilesPerRun) {
+		this.tilesPerRun = Math.max(1, tilesPerRun);
+	}
+
+	@Override
+	public void setInferenceWorkers(final int inferenceWorkers) {
+		this.inferenceWorkers = Math.max(1, inferenceWorkers);
+	}
+
+	@Override
+	public void setTileResultHandler(
+		final UnaryOperator<RandomAccessibleInterval<T>> tileResultHandler)
+	{
+		this.tileResultHandler = tileResultHandler;
+	}
+
+	@Override
+	public void setTileFilter(final IntPredicate tileFilter) {
+		this.tileFilter = tileFilter;
+	}
+
+	@Override
+	public void setMetrics(final StageMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void setBackgroundTiles(final BackgroundTiles backgroundTiles) {
+		this.backgroundTiles = backgroundTiles;
+	}
+
+	@Override
+	public void setTileCache(final TileResultCache tileCache,
+		final String prefix)
+	{
+		this.tileCache = tileCache;
+		this.tileCachePrefix = prefix;
+	}
+
+	/**
+	 * Results of tiles which were not computed by the model, e.g. because they
+	 * were cached, passed through the pipeline in place of the model input and
+	 * output.
+	 */
+	private static class Precomputed<T> {
+
+		private final List<RandomAccessibleInterval<T>> results;
+
+		Precomputed(final List<RandomAccessibleInterval<T>> results) {
+			this.results = results;
+		}
+	}
+
+	@Override
+	public List<RandomAccessibleInterval<T>> getCompletedTiles() {
+		return new ArrayList<>(completedTiles);
 	}
 
 	@Override
@@ -190,7 +662,8 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 
 	@Override
 	public void cancel(String reason) {
-		pool.shutdownNow();
+		if (aborted != null) aborted.set(true);
+		shutdownPipeline(true);
 	}
 
 	@Override
@@ -228,9 +701,10 @@ public abstract class DefaultNetwork<T extends RealType<T>> implements
 
 	@Override
 	public void dispose() {
-		if (pool != null) {
-			pool.shutdown();
-		}
+		shutdownPipeline(false);
+		outputSizes.clear();
 		pool = null;
+		prefetchPool = null;
+		collectPool = null;
 	}
 }
@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scijava.log.Logger;
+
+/**
+ * Keeps loaded models in memory so that they can be reused by subsequent
+ * runs. Models are reference counted: a model acquired by a network stays
+ * loaded until it is released again. Released models are kept as well, but
+ * if the registry holds more than {@link #getCapacity()} models the least
+ * recently used ones which are not in use are closed. Models which are owned
+ * by someone else, e.g. cached by the service which loaded them, are only
+ * removed from the registry, never closed.
+ *
+ * @param <M> the model type
+ */
+public class ModelRegistry<M extends AutoCloseable> {
+
+	public static final int DEFAULT_CAPACITY = 3;
+
+	public interface Loader<M> {
+
+		M load() throws IOException;
+	}
+
+	private static class Entry<M> {
+
+		final M model;
+		final boolean owned;
+		int references = 0;
+
+		Entry(final M model, final boolean owned) {
+			this.model = model;
+			this.owned = owned;
+		}
+	}
+
+	// access order, the first entry is the least recently used one
+	private final Map<String, Entry<M>> entries = new LinkedHashMap<>(16,
+		0.75f, true);
+	private int capacity;
+	private Logger logger;
+
+	public ModelRegistry() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ModelRegistry(final int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the model registered with the given key, loading it first if it
+	 * is not present. Every call has to be followed by a call to
+	 * {@link #release(String, AutoCloseable)} once the model is not used anymore.
+	 */
+	public synchronized M acquire(final String key, final Loader<M> loader)
+		throws IOException
+	{
+		return acquire(key, loader, true);
+	}
+
+	/**
+	 * Like {@link #acquire(String, Loader)}.
+	 *
+	 * @param owned whether the registry closes the model when it gets evicted.
+	 *          False for models whose loader keeps them cached and hands out
+	 *          the same instance again.
+	 */
+	public synchronized M acquire(final String key, final Loader<M> loader,
+		final boolean owned) throws IOException
+	{
+		Entry<M> entry = entries.get(key);
+		if (entry == null) {
+			final M model = loader.load();
+			if (model == null) return null;
+			entry = new Entry<>(model, owned);
+			entries.put(key, entry);
+		}
+		entry.references++;
+		evict();
+		return entry.model;
+	}
+
+	/**
+	 * Marks the model as no longer used by the caller. The model stays loaded
+	 * until it gets evicted. Models which are not (or no longer) part of the
+	 * registry are closed right away.
+	 */
+	public synchronized void release(final String key, final M model) {
+		final Entry<M> entry = entries.get(key);
+		if (entry == null || entry.model != model) {
+			close(model);
+			return;
+		}
+		entry.references = Math.max(0, entry.references - 1);
+		evict();
+	}
+
+	public synchronized boolean contains(final String key) {
+		return entries.containsKey(key);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set where failures to close a model are reported.
+	 */
+	public synchronized void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	public synchronized void setCapacity(final int capacity) {
+		this.capacity = Math.max(0, capacity);
+		evict();
+	}
+
+	/**
+	 * Closes all models which are currently not in use.
+	 */
+	public synchronized void clear() {
+		final List<M> unused = new ArrayList<>();
+		final Iterator<Entry<M>> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			final Entry<M> entry = iterator.next();
+			if (entry.references == 0) {
+				if (entry.owned) unused.add(entry.model);
+				iterator.remove();
+			}
+		}
+		unused.forEach(this::close);
+	}
+
+	private void evict() {
+		int excess = entries.size() - capacity;
+		final Iterator<Entry<M>> iterator = entries.values().iterator();
+		while (excess > 0 && iterator.hasNext()) {
+			final Entry<M> entry = iterator.next();
+			if (entry.references == 0) {
+				iterator.remove();
+				if (entry.owned) close(entry.model);
+				excess--;
+			}
+		}
+	}
+
+	private void close(final AutoCloseable model) {
+		if (model == null) return;
+		try {
+			model.close();
+		}
+		catch (final Exception e) {
+			if (logger != null) logger.warn("Could not close model: " + e
+				.getMessage());
+		}
+	}
+
+}
@@ -4,11 +4,16 @@ package org.csbdeep.network.model;
 import java.io.FileNotFoundException;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.function.IntPredicate;
+import java.util.function.UnaryOperator;
 
 import org.scijava.Cancelable;
 import org.scijava.Disposable;
 
 import org.csbdeep.imglib2.TiledView;
+import org.csbdeep.task.StageMetrics;
+import org.csbdeep.tiling.BackgroundTiles;
+import org.csbdeep.tiling.TileResultCache;
 import org.csbdeep.task.Task;
 import net.imagej.Dataset;
 import net.imglib2.RandomAccessibleInterval;
@@ -54,6 +59,63 @@ public interface Network<T extends RealType<T>> extends
 	 * dimension. Default value is true.
 	 */
 	void setDropSingletonDims(final boolean dropSingletonDims);
+
+	/**
+	 * Set how many tiles should be stacked along the batch dimension of the
+	 * input tensor and processed by a single model run. Only applies if the
+	 * network supports variable batch sizes. Default value is 1.
+	 */
+	void setTilesPerRun(final int tilesPerRun);
+
+	/**
+	 * Set how many model runs can happen at the same time, each on a different
+	 * tile. Only applies if the network can run the model concurrently. The
+	 * tile results keep their order. Default value is 1.
+	 */
+	void setInferenceWorkers(final int inferenceWorkers);
+
+	/**
+	 * Set a function which is applied to each tile result as soon as it is
+	 * available, in tile order. Its return value replaces the tile result, e.g.
+	 * a view of the result after it was moved out of memory. The tile passed
+	 * to the function might only be valid during the call. Null keeps the
+	 * results as they are.
+	 */
+	void setTileResultHandler(
+		UnaryOperator<RandomAccessibleInterval<T>> tileResultHandler);
+
+	/**
+	 * Set which tiles of the tiled view get processed, by their index in the
+	 * tiled view. Skipped tiles have no result. Null processes all tiles.
+	 */
+	void setTileFilter(IntPredicate tileFilter);
+
+	/**
+	 * Set where the timings of the pipeline stages and the processed tiles are
+	 * recorded. Null records nothing.
+	 */
+	void setMetrics(StageMetrics metrics);
+
+	/**
+	 * Set how tiles which only contain background are detected. Their result is
+	 * created without running the model. Null runs the model on all tiles.
+	 */
+	void setBackgroundTiles(BackgroundTiles backgroundTiles);
+
+	/**
+	 * Set where the results of single tiles are cached. Tiles whose result is
+	 * cached under the prefix and the tile content are not run through the
+	 * model again. Null caches nothing.
+	 *
+	 * @param prefix identifies the model and the normalization parameters
+	 */
+	void setTileCache(TileResultCache tileCache, String prefix);
+
+	/**
+	 * @return the results of the tiles completed by the last call, also if the
+	 *         call failed
+	 */
+	List<RandomAccessibleInterval<T>> getCompletedTiles();
 //
 //	void setDoDimensionReduction(boolean doDimensionReduction);
 //
@@ -29,10 +29,16 @@
 
 package org.csbdeep.network.model.tensorflow;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
 import net.imagej.tensorflow.Tensors;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.RealFloatConverter;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.integer.IntType;
@@ -40,6 +46,8 @@ import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import org.csbdeep.converter.*;
 import org.tensorflow.DataType;
@@ -108,10 +116,75 @@ public class DatasetTensorFlowConverter {
 		return dropSingletonDims ? Views.dropSingletonDimensions(outImg) : outImg;
 	}
 
+	/**
+	 * Copies a float tensor into an array which is reused by the calling thread
+	 * and returns a view of it, image dimension {@code d} being tensor dimension
+	 * {@code mapping[d]}. The view is only valid until the next call from the
+	 * same thread, use it if the data is consumed right away.
+	 *
+	 * @return the view or null if the tensor does not contain floats
+	 */
+	public static RandomAccessibleInterval<FloatType> tensorToReusedFloatImg(
+		final Tensor<?> tensor, final int[] mapping,
+		final boolean dropSingletonDims)
+	{
+		final long[] shape = tensor.shape();
+		final int n = shape.length;
+		if (!tensor.dataType().equals(DataType.FLOAT) || mapping == null ||
+			mapping.length != n) return null;
+		final int numElements = tensor.numElements();
+		final float[] array = getArray(numElements);
+		tensor.writeTo(FloatBuffer.wrap(array, 0, numElements));
+		// the first image dimension is the fastest one, the last tensor dimension
+		final long[] dims = new long[n];
+		for (int d = 0; d < n; d++) {
+			dims[d] = shape[n - 1 - d];
+		}
+		final int[] order = new int[n];
+		for (int d = 0; d < n; d++) {
+			order[d] = n - 1 - mapping[d];
+		}
+		final RandomAccessibleInterval<FloatType> img = permute(ArrayImgs.floats(
+			array, dims), order);
+		return dropSingletonDims ? Views.dropSingletonDimensions(img) : img;
+	}
+
+	/**
+	 * @return a view in which dimension {@code d} is dimension
+	 *         {@code order[d]} of the image
+	 */
+	private static <T> RandomAccessibleInterval<T> permute(
+		final RandomAccessibleInterval<T> image, final int[] order)
+	{
+		final int n = order.length;
+		// current[d] is the image dimension currently at position d
+		final int[] current = new int[n];
+		for (int d = 0; d < n; d++) {
+			current[d] = d;
+		}
+		RandomAccessibleInterval<T> result = image;
+		for (int d = 0; d < n; d++) {
+			int from = d;
+			while (current[from] != order[d]) {
+				from++;
+			}
+			if (from != d) {
+				result = Views.permute(result, d, from);
+				current[from] = current[d];
+				current[d] = order[d];
+			}
+		}
+		return result;
+	}
+
 	public static <T extends RealType<T>> Tensor datasetToTensor(
 		RandomAccessibleInterval<T> image, final int[] mapping)
 	{
 
+		if (canCopyToFloatTensor(image, mapping)) {
+			return floatTensor(image, mapping);
+		}
+
 		Tensor tensor;
 		try {
 			tensor = Tensors.tensor(image, mapping);
@@ -129,4 +202,90 @@ public class DatasetTensorFlowConverter {
 		return tensor;
 	}
 
+	private static <T extends RealType<T>> boolean canCopyToFloatTensor(
+		final RandomAccessibleInterval<T> image, final int[] mapping)
+	{
+		if (mapping == null || mapping.length != image.numDimensions()) {
+			return false;
+		}
+		if (Intervals.numElements(image) > Integer.MAX_VALUE / Float.BYTES) {
+			return false;
+		}
+		final boolean[] used = new boolean[mapping.length];
+		for (final int dim : mapping) {
+			if (dim < 0 || dim >= mapping.length || used[dim]) return false;
+			used[dim] = true;
+		}
+		return Util.getTypeFromInterval(image) instanceof FloatType;
+	}
+
+	/**
+	 * Copies the image into a float tensor, image dimension {@code d} becomes
+	 * tensor dimension {@code mapping[d]}. The values are written line by line
+	 * in tensor order into a direct buffer which is reused by the calling
+	 * thread, {@link Tensor#create(long[], FloatBuffer)} then copies it into
+	 * native memory.
+	 */
+	static <T extends RealType<T>> Tensor<Float> floatTensor(
+		final RandomAccessibleInterval<T> image, final int[] mapping)
+	{
+		final int n = image.numDimensions();
+		final long[] shape = new long[n];
+		// image dimension of each tensor dimension
+		final int[] imageDims = new int[n];
+		for (int d = 0; d < n; d++) {
+			shape[mapping[d]] = image.dimension(d);
+			imageDims[mapping[d]] = d;
+		}
+		final int numElements = (int) Intervals.numElements(image);
+		final FloatBuffer buffer = getBuffer(numElements);
+		if (numElements > 0) {
+			// TensorFlow stores tensors in row-major order, the last tensor
+			// dimension is the fastest one
+			final int lineDim = imageDims[n - 1];
+			final long lineLength = image.dimension(lineDim);
+			final long[] position = Intervals.minAsLongArray(image);
+			final RandomAccess<T> access = image.randomAccess();
+			int index = 0;
+			while (index < numElements) {
+				access.setPosition(position);
+				for (long x = 0; x < lineLength; x++) {
+					buffer.put(index++, access.get().getRealFloat());
+					access.fwd(lineDim);
+				}
+				for (int t = n - 2; t >= 0; t--) {
+					final int d = imageDims[t];
+					if (++position[d] <= image.max(d)) break;
+					position[d] = image.min(d);
+				}
+			}
+		}
+		buffer.position(0);
+		buffer.limit(numElements);
+		return Tensor.create(shape, buffer);
+	}
+
+	private static final ThreadLocal<FloatBuffer> buffers = new ThreadLocal<>();
+	private static final ThreadLocal<float[]> arrays = new ThreadLocal<>();
+
+	private static float[] getArray(final int numElements) {
+		float[] array = arrays.get();
+		if (array == null || array.length < numElements) {
+			array = new float[numElements];
+			arrays.set(array);
+		}
+		return array;
+	}
+
+	private static FloatBuffer getBuffer(final int numElements) {
+		FloatBuffer buffer = buffers.get();
+		if (buffer == null || buffer.capacity() < numElements) {
+			buffer = ByteBuffer.allocateDirect(numElements * Float.BYTES).order(
+				ByteOrder.nativeOrder()).asFloatBuffer();
+			buffers.set(buffer);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
 }
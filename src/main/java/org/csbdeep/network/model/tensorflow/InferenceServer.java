@@ -0,0 +1,307 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.model.tensorflow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.csbdeep.network.worker.BatchingProcessor;
+import org.csbdeep.network.worker.FloatTensor;
+import org.csbdeep.network.worker.InferenceClient;
+import org.csbdeep.network.worker.TensorProcessor;
+import org.scijava.log.Logger;
+import org.scijava.log.StderrLogService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running headless service which keeps models loaded and answers
+ * prediction requests over HTTP. Tensors of concurrent requests for the same
+ * model are merged into shared batches before the model is run, see
+ * {@link BatchingProcessor}, if the model has a variable batch size.
+ * <p>
+ * {@code POST /models/<name>} runs the model in
+ * {@code <models directory>/<name>} on the tensor in the request body (as
+ * written by {@link FloatTensor#write}) and returns the output tensor.
+ * {@code GET /models} lists the loaded models.
+ * </p>
+ * <p>
+ * Usage: {@code InferenceServer <models directory> [<port> [<max batch size>
+ * [<max delay ms>]]]}
+ * </p>
+ */
+public class InferenceServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 8765;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 8;
+	public static final long DEFAULT_MAX_DELAY_MS = 5;
+
+	private static final String MODELS_PATH = "/models";
+
+	private final File modelsDirectory;
+	private final int maxBatchSize;
+	private final long maxDelayMs;
+	private final HttpServer server;
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+	private final Map<String, LoadedModel> models = new ConcurrentHashMap<>();
+	private Logger logger = new StderrLogService();
+
+	public InferenceServer(final File modelsDirectory, final int port,
+		final int maxBatchSize, final long maxDelayMs) throws IOException
+	{
+		this.modelsDirectory = modelsDirectory;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayMs = maxDelayMs;
+		// only local clients, models and inputs are not authenticated
+		server = HttpServer.create(new InetSocketAddress(InetAddress
+			.getLoopbackAddress(), port), 0);
+		server.createContext(MODELS_PATH, this::handle);
+		server.setExecutor(pool);
+	}
+
+	/**
+	 * Set where loaded models and failed requests are reported, standard error
+	 * by default.
+	 */
+	public void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(final HttpExchange exchange) throws IOException {
+		try {
+			final String path = exchange.getRequestURI().getRawPath();
+			if (path.equals(MODELS_PATH) || path.equals(MODELS_PATH + "/")) {
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					respond(exchange, 405, "Use GET to list the models");
+					return;
+				}
+				respond(exchange, 200, String.join("\n", models.keySet()));
+				return;
+			}
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, "Use POST to run a model");
+				return;
+			}
+			final String name = URLDecoder.decode(path.substring(MODELS_PATH
+				.length() + 1), "UTF-8");
+			final FloatTensor input;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				exchange.getRequestBody())))
+			{
+				input = FloatTensor.read(in);
+			}
+			catch (final IOException e) {
+				throw new IllegalArgumentException("Invalid tensor in request body: " +
+					e.getMessage(), e);
+			}
+			final FloatTensor output = getModel(name).batching.process(input);
+			exchange.getResponseHeaders().set("Content-Type",
+				InferenceClient.CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, output.getNumBytes());
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(exchange.getResponseBody())))
+			{
+				output.write(out);
+			}
+		}
+		catch (final UnknownModelException e) {
+			respond(exchange, 404, e.getMessage());
+		}
+		catch (final IllegalArgumentException e) {
+			respond(exchange, 400, String.valueOf(e.getMessage()));
+		}
+		catch (final Exception | OutOfMemoryError e) {
+			logger.warn("Request " + exchange.getRequestURI() + " failed: " + e
+				.getMessage());
+			respond(exchange, 500, String.valueOf(e.getMessage()));
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private LoadedModel getModel(final String name) throws IOException {
+		final LoadedModel loaded = models.get(name);
+		if (loaded != null) return loaded;
+		synchronized (models) {
+			LoadedModel model = models.get(name);
+			if (model == null) {
+				final TensorProcessor processor = loadModel(getModelDirectory(name));
+				final boolean batching = hasVariableBatchSize(processor);
+				model = new LoadedModel(processor, batching);
+				models.put(name, model);
+				logger.info("Loaded model " + name + (batching ? ""
+					: " (fixed batch size, requests are not merged)"));
+			}
+			return model;
+		}
+	}
+
+	/**
+	 * Loads the model in the given directory.
+	 */
+	protected TensorProcessor loadModel(final File directory)
+		throws IOException
+	{
+		return new TensorFlowWorker(directory.getPath());
+	}
+
+	/**
+	 * @return whether tensors of several requests can be stacked along the
+	 *         first dimension and run by the given model at once
+	 */
+	protected boolean hasVariableBatchSize(final TensorProcessor model) {
+		return model instanceof TensorFlowWorker && ((TensorFlowWorker) model)
+			.hasVariableBatchSize();
+	}
+
+	private File getModelDirectory(final String name) {
+		if (name.isEmpty() || name.contains("/") || name.contains("\\") || name
+			.startsWith("."))
+		{
+			throw new IllegalArgumentException("Invalid model name: " + name);
+		}
+		final File directory = new File(modelsDirectory, name);
+		if (!directory.isDirectory()) {
+			throw new UnknownModelException(name);
+		}
+		return directory;
+	}
+
+	private void respond(final HttpExchange exchange, final int status,
+		final String message) throws IOException
+	{
+		if (exchange.getResponseCode() != -1) {
+			// the output was already being sent, the client gets a truncated body
+			logger.warn("Could not send status " + status + " for request " +
+				exchange.getRequestURI() + ": " + message);
+			return;
+		}
+		final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type",
+			"text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Stops the server and closes all loaded models.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		pool.shutdownNow();
+		synchronized (models) {
+			models.values().forEach(LoadedModel::close);
+			models.clear();
+		}
+	}
+
+	private class LoadedModel {
+
+		private final TensorProcessor model;
+		private final BatchingProcessor batching;
+
+		LoadedModel(final TensorProcessor model, final boolean variableBatchSize) {
+			this.model = model;
+			// a model with a fixed batch size only accepts the tensors one by one
+			batching = new BatchingProcessor(model, variableBatchSize
+				? maxBatchSize : 1, maxDelayMs);
+		}
+
+		void close() {
+			batching.close();
+			if (model instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) model).close();
+				}
+				catch (final Exception e) {
+					logger.warn("Could not close model: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thrown if there is no model with the requested name, answered with 404.
+	 */
+	static class UnknownModelException extends IllegalArgumentException {
+
+		UnknownModelException(final String name) {
+			super("Model not found: " + name);
+		}
+	}
+
+	public static void main(final String... args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: InferenceServer <models directory> [<port> " +
+				"[<max batch size> [<max delay ms>]]]");
+			return;
+		}
+		final int port = args.length > 1 ? Integer.parseInt(args[1])
+			: DEFAULT_PORT;
+		final int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2])
+			: DEFAULT_MAX_BATCH_SIZE;
+		final long maxDelayMs = args.length > 3 ? Long.parseLong(args[3])
+			: DEFAULT_MAX_DELAY_MS;
+		final InferenceServer server = new InferenceServer(new File(args[0]), port,
+			maxBatchSize, maxDelayMs);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+		server.start();
+		System.out.println("[INFO] Inference server listening on port " + server
+			.getPort());
+	}
+
+}
@@ -0,0 +1,147 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.model.tensorflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.tensorflow.framework.ConfigProto;
+import org.tensorflow.framework.GraphOptions;
+import org.tensorflow.framework.OptimizerOptions;
+
+/**
+ * Thread pool and optimizer settings of the TensorFlow session running a
+ * model. A thread count of zero lets TensorFlow choose, which means one thread
+ * per core for each pool and oversubscribes the CPU if several models are
+ * running at the same time.
+ */
+public class SessionConfig {
+
+	public static final SessionConfig DEFAULT = new SessionConfig(0, 0, false);
+
+	private final int intraOpThreads;
+	private final int interOpThreads;
+	private final boolean jit;
+
+	/**
+	 * @param intraOpThreads number of threads used within a single operation
+	 * @param interOpThreads number of operations which run in parallel
+	 * @param jit whether TensorFlow should compile the graph with XLA
+	 */
+	public SessionConfig(final int intraOpThreads, final int interOpThreads,
+		final boolean jit)
+	{
+		this.intraOpThreads = Math.max(0, intraOpThreads);
+		this.interOpThreads = Math.max(0, interOpThreads);
+		this.jit = jit;
+	}
+
+	public int getIntraOpThreads() {
+		return intraOpThreads;
+	}
+
+	public int getInterOpThreads() {
+		return interOpThreads;
+	}
+
+	public boolean isJit() {
+		return jit;
+	}
+
+	public boolean isDefault() {
+		return equals(DEFAULT);
+	}
+
+	/**
+	 * @return the serialized {@link ConfigProto} to create a session with
+	 */
+	public byte[] toConfigProto() {
+		final ConfigProto.Builder builder = ConfigProto.newBuilder()
+			.setIntraOpParallelismThreads(intraOpThreads)
+			.setInterOpParallelismThreads(interOpThreads);
+		if (jit) {
+			builder.setGraphOptions(GraphOptions.newBuilder().setOptimizerOptions(
+				OptimizerOptions.newBuilder().setGlobalJitLevel(
+					OptimizerOptions.GlobalJitLevel.ON_1)));
+		}
+		return builder.build().toByteArray();
+	}
+
+	/**
+	 * @return a key identifying these settings, e.g. to keep models loaded with
+	 *         different settings apart
+	 */
+	public String getKey() {
+		return "intra" + intraOpThreads + "_inter" + interOpThreads + (jit
+			? "_jit" : "");
+	}
+
+	/**
+	 * @return the settings tried when tuning the session for the given number
+	 *         of cores: the default and halving the number of threads per
+	 *         operation, with operations running one after another
+	 */
+	public static List<SessionConfig> getTuningCandidates(final int cores) {
+		final List<SessionConfig> candidates = new ArrayList<>();
+		candidates.add(DEFAULT);
+		final int minThreads = Math.max(1, cores / 8);
+		for (int threads = Math.max(1, cores); threads >= minThreads; threads /=
+			2)
+		{
+			candidates.add(new SessionConfig(threads, 1, false));
+			if (threads == 1) break;
+		}
+		return candidates;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (!(o instanceof SessionConfig)) return false;
+		final SessionConfig other = (SessionConfig) o;
+		return intraOpThreads == other.intraOpThreads &&
+			interOpThreads == other.interOpThreads && jit == other.jit;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(intraOpThreads, interOpThreads, jit);
+	}
+
+	@Override
+	public String toString() {
+		return (intraOpThreads == 0 ? "default" : String.valueOf(intraOpThreads)) +
+			" thread(s) per operation, " + (interOpThreads == 0 ? "default" : String
+				.valueOf(interOpThreads)) + " operation(s) in parallel" + (jit
+					? ", XLA" : "");
+	}
+
+}
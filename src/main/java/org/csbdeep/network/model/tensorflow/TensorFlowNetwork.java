@@ -1,17 +1,28 @@
 
 package org.csbdeep.network.model.tensorflow;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
 import org.tensorflow.SavedModelBundle;
 import org.tensorflow.Tensor;
 import org.tensorflow.TensorFlow;
 import org.tensorflow.TensorFlowException;
 import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.SavedModel;
 import org.tensorflow.framework.SignatureDef;
 import org.tensorflow.framework.TensorInfo;
 import org.tensorflow.framework.TensorShapeProto;
@@ -19,6 +30,9 @@ import org.tensorflow.framework.TensorShapeProto;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import org.csbdeep.network.model.DefaultNetwork;
+import org.csbdeep.network.model.ImageTensor;
+import org.csbdeep.network.model.ModelRegistry;
+import org.csbdeep.network.worker.TensorProcessor;
 import org.csbdeep.task.Task;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
@@ -28,12 +42,36 @@ import net.imagej.tensorflow.TensorFlowService;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
 
 public class TensorFlowNetwork<T extends RealType<T>> extends
 		DefaultNetwork<T>
 {
 
+	/**
+	 * Loaded models shared by all networks of this JVM, keyed by the model
+	 * cache name.
+	 */
+	private static final ModelRegistry<SavedModelBundle> models =
+		new ModelRegistry<>();
+
+	/**
+	 * Session settings found by auto-tuning, keyed by the model cache name.
+	 */
+	private static final Map<String, SessionConfig> tunedSessionConfigs =
+		new ConcurrentHashMap<>();
+
+	private static final int TUNING_WARMUP_RUNS = 1;
+	private static final int TUNING_RUNS = 3;
+
 	private SavedModelBundle model;
+	private String modelKey;
+	private Location modelSource;
+	private String modelName;
+	private File modelsDirectory;
+	private SessionConfig sessionConfig = SessionConfig.DEFAULT;
+	private boolean autoTuneSession = false;
+	private TensorProcessor remoteProcessor = null;
 	private SignatureDef sig;
 	private final TensorFlowService tensorFlowService;
 	private final DatasetService datasetService;
@@ -47,6 +85,7 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 	// in Python. Perhaps this should be an exported constant in TensorFlow's Java
 	// API.
 	private static final String MODEL_TAG = "serve";
+	private static final String SAVED_MODEL_FILE = "saved_model.pb";
 	protected static final String DEFAULT_SERVING_SIGNATURE_DEF_KEY =
 		"serving_default";
 
@@ -123,11 +162,19 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 
 	@Override
 	protected boolean loadModel(final Location source, final String modelName) {
+		modelSource = source;
+		this.modelName = modelName;
+		if (remoteProcessor != null) {
+			// the model runs elsewhere, only its signature is needed here
+			releaseModel();
+			sig = readSignature();
+			if (sig != null) return true;
+		}
+		final SessionConfig config = autoTuneSession ? tunedSessionConfigs
+			.getOrDefault(modelName, sessionConfig) : sessionConfig;
 		try {
-			if (model != null) {
-				model.close();
-			}
-			model = tensorFlowService.loadModel(source, modelName, MODEL_TAG);
+			acquireModel(config);
+			if (model == null) return false;
 		}
 		catch (TensorFlowException | IOException e) {
 			e.printStackTrace();
@@ -146,10 +193,251 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 		return true;
 	}
 
+	/**
+	 * Reads the serving signature from the saved_model.pb file of the model,
+	 * without creating a session. It is taken from the directory where
+	 * imagej-tensorflow unpacked the model or from the model archive.
+	 *
+	 * @return null if the file could not be found or read
+	 */
+	private SignatureDef readSignature() {
+		try {
+			if (modelsDirectory != null) {
+				final File file = new File(new File(modelsDirectory, modelName),
+					SAVED_MODEL_FILE);
+				if (file.exists()) {
+					try (InputStream in = new FileInputStream(file)) {
+						return readSignature(in);
+					}
+				}
+			}
+			if (modelSource instanceof FileLocation) {
+				try (ZipFile zip = new ZipFile(((FileLocation) modelSource)
+					.getFile()))
+				{
+					final Enumeration<? extends ZipEntry> entries = zip.entries();
+					while (entries.hasMoreElements()) {
+						final ZipEntry entry = entries.nextElement();
+						if (entry.getName().endsWith(SAVED_MODEL_FILE)) {
+							try (InputStream in = zip.getInputStream(entry)) {
+								return readSignature(in);
+							}
+						}
+					}
+				}
+			}
+		}
+		catch (final IOException e) {
+			logError("Could not read the model signature: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private static SignatureDef readSignature(final InputStream in)
+		throws IOException
+	{
+		for (final MetaGraphDef graph : SavedModel.parseFrom(in)
+			.getMetaGraphsList())
+		{
+			if (graph.getMetaInfoDef().getTagsList().contains(MODEL_TAG)) {
+				return graph.getSignatureDefOrThrow(
+					DEFAULT_SERVING_SIGNATURE_DEF_KEY);
+			}
+		}
+		return null;
+	}
+
+	private void acquireModel(final SessionConfig config) throws IOException {
+		releaseModel();
+		final String key = config.isDefault() ? modelName : modelName + "_" +
+			config.getKey();
+		model = models.acquire(key, () -> loadBundle(config), !isLoadedByService(
+			config));
+		if (model != null) modelKey = key;
+	}
+
+	/**
+	 * Loads the model with a session created from the given settings. The
+	 * default settings are handled by imagej-tensorflow, for other settings the
+	 * model is loaded from the directory where imagej-tensorflow unpacked it.
+	 */
+	private SavedModelBundle loadBundle(final SessionConfig config)
+		throws IOException
+	{
+		if (isLoadedByService(config)) {
+			return tensorFlowService.loadModel(modelSource, modelName, MODEL_TAG);
+		}
+		final File modelDirectory = new File(modelsDirectory, modelName);
+		if (!modelDirectory.exists()) {
+			// let imagej-tensorflow unpack the model. The service caches the
+			// bundle, so it is registered instead of closed.
+			final SavedModelBundle bundle = models.acquire(modelName,
+				() -> loadBundle(SessionConfig.DEFAULT), false);
+			models.release(modelName, bundle);
+		}
+		return SavedModelBundle.loader(modelDirectory.getPath()).withTags(
+			MODEL_TAG).withConfigProto(config.toConfigProto()).load();
+	}
+
+	/**
+	 * @return whether imagej-tensorflow loads the model for these settings. It
+	 *         caches the bundle and returns the same instance again, so the
+	 *         bundle must not be closed.
+	 */
+	private boolean isLoadedByService(final SessionConfig config) {
+		return config.isDefault() || modelsDirectory == null;
+	}
+
+	/**
+	 * Set the directory where imagej-tensorflow unpacks the models. It is needed
+	 * to load models with session settings other than the default.
+	 */
+	public void setModelsDirectory(final File modelsDirectory) {
+		this.modelsDirectory = modelsDirectory;
+	}
+
+	/**
+	 * Set the thread pool and optimizer settings of the TensorFlow session.
+	 * Applies to models loaded afterwards.
+	 */
+	public void setSessionConfig(final SessionConfig sessionConfig) {
+		this.sessionConfig = sessionConfig == null ? SessionConfig.DEFAULT
+			: sessionConfig;
+	}
+
+	public SessionConfig getSessionConfig() {
+		return sessionConfig;
+	}
+
+	/**
+	 * Set whether the session settings should be tuned before the first run of
+	 * a model: a few runs on the first tile are timed for different numbers of
+	 * threads and the fastest setting is kept for this model.
+	 */
+	public void setAutoTuneSession(final boolean autoTuneSession) {
+		this.autoTuneSession = autoTuneSession;
+	}
+
+	/**
+	 * @return the session settings found by auto-tuning the given model, or
+	 *         null if it was not tuned yet
+	 */
+	public static SessionConfig getTunedSessionConfig(final String modelName) {
+		return tunedSessionConfigs.get(modelName);
+	}
+
+	@Override
+	public List<RandomAccessibleInterval<T>> call() throws ExecutionException {
+		if (autoTuneSession && remoteProcessor == null && modelName != null && tiledView != null &&
+			!tunedSessionConfigs.containsKey(modelName))
+		{
+			tuneSession();
+		}
+		return super.call();
+	}
+
+	private void tuneSession() {
+		final RandomAccessibleInterval<T> tile = Views.iterable(tiledView)
+			.firstElement();
+		final Tensor input = (Tensor) prepareInput(tile);
+		SessionConfig best = null;
+		long bestTime = Long.MAX_VALUE;
+		try {
+			for (final SessionConfig candidate : SessionConfig.getTuningCandidates(
+				Runtime.getRuntime().availableProcessors()))
+			{
+				try {
+					final long time = timeRuns(candidate, input);
+					log("Session with " + candidate + ": " + time / 1000000 +
+						" ms per tile");
+					if (time < bestTime) {
+						bestTime = time;
+						best = candidate;
+					}
+				}
+				catch (final Exception e) {
+					logError("Could not run model with session " + candidate + ": " + e
+						.getMessage());
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+		if (best == null) return;
+		tunedSessionConfigs.put(modelName, best);
+		log("Using session with " + best);
+		try {
+			acquireModel(best);
+		}
+		catch (TensorFlowException | IOException e) {
+			logError("Could not load model with session " + best + ": " + e
+				.getMessage());
+		}
+	}
+
+	/**
+	 * Times the model with a session created from the given settings. Bundles
+	 * loaded by imagej-tensorflow are shared with the service and the registry,
+	 * so they are never closed here; only bundles loaded for other settings are.
+	 */
+	private long timeRuns(final SessionConfig config, final Tensor input)
+		throws Exception
+	{
+		if (!config.isDefault() && modelsDirectory != null) {
+			try (SavedModelBundle bundle = loadBundle(config)) {
+				return timeRuns(bundle, input);
+			}
+		}
+		if (model != null && modelName.equals(modelKey)) {
+			return timeRuns(model, input);
+		}
+		final SavedModelBundle bundle = models.acquire(modelName,
+			() -> loadBundle(SessionConfig.DEFAULT), false);
+		try {
+			return timeRuns(bundle, input);
+		}
+		finally {
+			models.release(modelName, bundle);
+		}
+	}
+
+	/**
+	 * @return the average duration of a model run on the given input in
+	 *         nanoseconds, after some warm-up runs
+	 */
+	private long timeRuns(final SavedModelBundle bundle, final Tensor input)
+		throws Exception
+	{
+		for (int i = 0; i < TUNING_WARMUP_RUNS; i++) {
+			TensorFlowRunner.executeGraph(bundle, input, getInputTensorInfo(),
+				getOutputTensorInfo()).close();
+		}
+		final long start = System.nanoTime();
+		for (int i = 0; i < TUNING_RUNS; i++) {
+			TensorFlowRunner.executeGraph(bundle, input, getInputTensorInfo(),
+				getOutputTensorInfo()).close();
+		}
+		return (System.nanoTime() - start) / TUNING_RUNS;
+	}
+
 	protected void setModel(final SavedModelBundle model) {
+		releaseModel();
 		this.model = model;
 	}
 
+	private void releaseModel() {
+		if (model != null && modelKey != null) {
+			models.release(modelKey, model);
+		}
+		model = null;
+		modelKey = null;
+	}
+
+	public static ModelRegistry<SavedModelBundle> getModelRegistry() {
+		return models;
+	}
+
 	@Override
 	public void preprocess() {
 		initMapping();
@@ -247,28 +535,94 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 		final RandomAccessibleInterval<T> tile) throws Exception
 	{
 
-		final Tensor inputTensor = DatasetTensorFlowConverter.datasetToTensor(tile,
-			getInputNode().getMappingIndices());
+		final Object inputTensor = prepareInput(tile);
 		if (inputTensor != null) {
-			RandomAccessibleInterval<T> output = null;
-			Tensor outputTensor = TensorFlowRunner.executeGraph(model, inputTensor,
-				getInputTensorInfo(), getOutputTensorInfo());
-
-			if (outputTensor != null) {
-				output = DatasetTensorFlowConverter.tensorToDataset(outputTensor, tile
-					.randomAccess().get(), getOutputNode().getMappingIndices(),
-					dropSingletonDims);
-				outputTensor.close();
+			Object outputTensor = null;
+			try {
+				outputTensor = runModel(inputTensor);
+				if (outputTensor != null) {
+					return collectOutput(outputTensor, tile);
+				}
+			}
+			finally {
+				release(outputTensor);
+				release(inputTensor);
 			}
-			inputTensor.close();
-			return output;
 		}
 		return null;
 	}
 
+	@Override
+	protected Object prepareInput(final RandomAccessibleInterval<T> tile) {
+		return DatasetTensorFlowConverter.datasetToTensor(tile, getInputNode()
+			.getMappingIndices());
+	}
+
+	@Override
+	protected Object runModel(final Object input) throws Exception {
+		if (remoteProcessor != null) {
+			return TensorFlowWorker.toTensor(remoteProcessor.process(TensorFlowWorker
+				.toFloatTensor((Tensor) input)));
+		}
+		return TensorFlowRunner.executeGraph(model, (Tensor) input,
+			getInputTensorInfo(), getOutputTensorInfo());
+	}
+
+	/**
+	 * Set worker processes or an inference server which run the model instead
+	 * of this JVM. The tiles are still prepared and collected here. If it is
+	 * set before the model is loaded, only the model signature is read instead
+	 * of creating a local session. Null runs the model locally.
+	 */
+	public void setRemoteProcessor(final TensorProcessor remoteProcessor) {
+		this.remoteProcessor = remoteProcessor;
+	}
+
+	@Override
+	protected RandomAccessibleInterval<T> collectOutput(final Object output,
+		final RandomAccessibleInterval<T> tile)
+	{
+		final T type = tile.randomAccess().get();
+		if (hasTileResultHandler() && type instanceof FloatType) {
+			// the handler consumes the result right away, no need for a new image
+			final RandomAccessibleInterval<FloatType> result =
+				DatasetTensorFlowConverter.tensorToReusedFloatImg((Tensor) output,
+					getOutputNode().getMappingIndices(), dropSingletonDims);
+			if (result != null) return (RandomAccessibleInterval<T>) result;
+		}
+		return DatasetTensorFlowConverter.tensorToDataset((Tensor) output, type,
+			getOutputNode().getMappingIndices(), dropSingletonDims);
+	}
+
+	/**
+	 * TensorFlow sessions can run the graph from multiple threads.
+	 */
+	@Override
+	protected boolean supportsConcurrentRuns() {
+		return true;
+	}
+
+	@Override
+	protected boolean supportsTileBatching() {
+		return hasVariableBatchSize(getInputNode()) && hasVariableBatchSize(
+			getOutputNode());
+	}
+
+	private static boolean hasVariableBatchSize(final ImageTensor node) {
+		if (node == null || node.getNodeShape().length == 0) return false;
+		return node.getNodeShape()[0] < 0;
+	}
+
+	@Override
+	protected void release(final Object data) {
+		if (data instanceof Tensor) {
+			((Tensor) data).close();
+		}
+	}
+
 	@Override
 	public boolean isInitialized() {
-		return model != null;
+		return model != null || remoteProcessor != null && sig != null;
 	}
 
 	public void setInputTensor(final TensorInfo tensorInfo) {
@@ -301,7 +655,7 @@ public class TensorFlowNetwork<T extends RealType<T>> extends
 	public void dispose() {
 		super.dispose();
 		sig = null;
-		model = null;
+		releaseModel();
 		inputTensorInfo = null;
 		outputTensorInfo = null;
 		foundJNI = true;
@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.model.tensorflow;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.FloatBuffer;
+
+import org.csbdeep.network.worker.FloatTensor;
+import org.csbdeep.network.worker.TensorProcessor;
+import org.csbdeep.network.worker.WorkerServer;
+import org.scijava.log.StderrLogService;
+import org.tensorflow.SavedModelBundle;
+import org.tensorflow.Tensor;
+import org.tensorflow.framework.MetaGraphDef;
+import org.tensorflow.framework.SignatureDef;
+import org.tensorflow.framework.TensorInfo;
+
+/**
+ * Worker process holding its own copy of a model. It receives input tensors
+ * from a {@link org.csbdeep.network.worker.WorkerPool} and sends back the
+ * output of the model.
+ * <p>
+ * Usage: {@code TensorFlowWorker <unpacked model directory> <port> [<host>]}
+ * </p>
+ */
+public class TensorFlowWorker implements TensorProcessor, AutoCloseable {
+
+	private static final String MODEL_TAG = "serve";
+
+	private final SavedModelBundle model;
+	private final TensorInfo inputTensorInfo;
+	private final TensorInfo outputTensorInfo;
+
+	public TensorFlowWorker(final String modelDirectory) throws IOException {
+		model = SavedModelBundle.load(modelDirectory, MODEL_TAG);
+		final SignatureDef sig = MetaGraphDef.parseFrom(model.metaGraphDef())
+			.getSignatureDefOrThrow(
+				TensorFlowNetwork.DEFAULT_SERVING_SIGNATURE_DEF_KEY);
+		inputTensorInfo = sig.getInputsMap().values().iterator().next();
+		outputTensorInfo = sig.getOutputsMap().values().iterator().next();
+	}
+
+	@Override
+	public FloatTensor process(final FloatTensor input) throws Exception {
+		try (Tensor inputTensor = toTensor(input);
+				Tensor outputTensor = TensorFlowRunner.executeGraph(model,
+					inputTensor, inputTensorInfo, outputTensorInfo))
+		{
+			return toFloatTensor(outputTensor);
+		}
+	}
+
+	/**
+	 * @return whether the first dimension of the input and output tensor has
+	 *         a variable size, so that several inputs can be stacked into one
+	 *         run
+	 */
+	public boolean hasVariableBatchSize() {
+		return hasVariableBatchSize(inputTensorInfo) && hasVariableBatchSize(
+			outputTensorInfo);
+	}
+
+	private static boolean hasVariableBatchSize(final TensorInfo tensorInfo) {
+		return tensorInfo.getTensorShape().getDimCount() > 0 && tensorInfo
+			.getTensorShape().getDim(0).getSize() < 0;
+	}
+
+	public static FloatTensor toFloatTensor(final Tensor tensor) {
+		final float[] data = new float[tensor.numElements()];
+		tensor.writeTo(FloatBuffer.wrap(data));
+		return new FloatTensor(tensor.shape(), data);
+	}
+
+	public static Tensor toTensor(final FloatTensor tensor) {
+		return Tensor.create(tensor.getShape(), FloatBuffer.wrap(tensor
+			.getData()));
+	}
+
+	@Override
+	public void close() {
+		model.close();
+	}
+
+	public static void main(final String... args) throws IOException {
+		if (args.length < 2) {
+			System.out.println(
+				"Usage: TensorFlowWorker <model directory> <port> [<host>]");
+			return;
+		}
+		final TensorFlowWorker worker = new TensorFlowWorker(args[0]);
+		final int port = Integer.parseInt(args[1]);
+		final WorkerServer server = args.length > 2 ? new WorkerServer(worker,
+			new InetSocketAddress(args[2], port)) : new WorkerServer(worker, port);
+		server.setLogger(new StderrLogService());
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.close();
+			worker.close();
+		}));
+		server.start();
+		System.out.println("[INFO] Worker listening on port " + server.getPort());
+	}
+
+}
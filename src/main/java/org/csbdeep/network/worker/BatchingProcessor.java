@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.worker;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges tensors of concurrent callers into one batch before they are passed
+ * to the model. The first dimension of the tensors is the batch dimension.
+ * A batch is run as soon as it holds {@code maxBatchSize} entries or the
+ * oldest tensor waited for {@code maxDelayMs}. Only tensors with the same
+ * shape apart from the batch dimension are merged. The model has to accept a
+ * variable size of the batch dimension, otherwise use a {@code maxBatchSize}
+ * of 1.
+ */
+public class BatchingProcessor implements TensorProcessor, Closeable {
+
+	private final TensorProcessor batchProcessor;
+	private final int maxBatchSize;
+	private final long maxDelayMs;
+
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param batchProcessor computes the output of a merged batch
+	 * @param maxBatchSize maximum size of the batch dimension of a merged batch
+	 * @param maxDelayMs how long a tensor waits for other tensors at most
+	 */
+	public BatchingProcessor(final TensorProcessor batchProcessor,
+		final int maxBatchSize, final long maxDelayMs)
+	{
+		this.batchProcessor = batchProcessor;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxDelayMs = Math.max(0, maxDelayMs);
+		dispatcher = new Thread(this::dispatch, "csbdeep-batching");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	@Override
+	public FloatTensor process(final FloatTensor input) throws Exception {
+		if (closed) throw new IllegalStateException("Processor is closed");
+		if (input.getShape().length == 0) return batchProcessor.process(input);
+		final Request request = new Request(input);
+		queue.add(request);
+		try {
+			return request.result.get();
+		}
+		catch (final ExecutionException e) {
+			if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw e;
+		}
+	}
+
+	private void dispatch() {
+		final List<Request> pending = new ArrayList<>();
+		while (!closed) {
+			try {
+				if (pending.isEmpty()) {
+					final Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null) continue;
+					pending.add(first);
+				}
+				final List<Request> batch = nextBatch(pending);
+				run(batch);
+			}
+			catch (final InterruptedException e) {
+				break;
+			}
+		}
+		pending.addAll(queue);
+		queue.clear();
+		for (final Request request : pending) {
+			request.result.completeExceptionally(new IllegalStateException(
+				"Processor is closed"));
+		}
+	}
+
+	/**
+	 * Collects requests which can be merged with the oldest pending request.
+	 * Requests of a different shape stay in {@code pending} for the next batch.
+	 */
+	private List<Request> nextBatch(final List<Request> pending)
+		throws InterruptedException
+	{
+		final List<Request> batch = new ArrayList<>();
+		final Request first = pending.get(0);
+		long size = 0;
+		final Iterator<Request> iterator = pending.iterator();
+		while (iterator.hasNext()) {
+			final Request request = iterator.next();
+			if (!first.canMergeWith(request) || size + request
+				.batchSize() > maxBatchSize && !batch.isEmpty()) continue;
+			batch.add(request);
+			size += request.batchSize();
+			iterator.remove();
+		}
+		final long deadline = first.created + maxDelayMs;
+		while (size < maxBatchSize) {
+			final long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) break;
+			final Request request = queue.poll(wait, TimeUnit.MILLISECONDS);
+			if (request == null) break;
+			if (first.canMergeWith(request) && size + request
+				.batchSize() <= maxBatchSize)
+			{
+				batch.add(request);
+				size += request.batchSize();
+			}
+			else {
+				pending.add(request);
+			}
+		}
+		return batch;
+	}
+
+	private void run(final List<Request> batch) {
+		try {
+			if (batch.size() == 1) {
+				batch.get(0).result.complete(batchProcessor.process(batch.get(
+					0).input));
+				return;
+			}
+			final FloatTensor output = batchProcessor.process(merge(batch));
+			final List<FloatTensor> outputs = split(output, batch);
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).result.complete(outputs.get(i));
+			}
+		}
+		catch (final Exception | OutOfMemoryError e) {
+			for (final Request request : batch) {
+				request.result.completeExceptionally(e);
+			}
+		}
+	}
+
+	static FloatTensor merge(final List<Request> batch) {
+		final long[] shape = batch.get(0).input.getShape().clone();
+		shape[0] = 0;
+		int length = 0;
+		for (final Request request : batch) {
+			shape[0] += request.batchSize();
+			length += request.input.getData().length;
+		}
+		final float[] data = new float[length];
+		int offset = 0;
+		for (final Request request : batch) {
+			final float[] values = request.input.getData();
+			System.arraycopy(values, 0, data, offset, values.length);
+			offset += values.length;
+		}
+		return new FloatTensor(shape, data);
+	}
+
+	static List<FloatTensor> split(final FloatTensor output,
+		final List<Request> batch)
+	{
+		final long[] shape = output.getShape();
+		long total = 0;
+		for (final Request request : batch) {
+			total += request.batchSize();
+		}
+		if (shape.length == 0 || shape[0] != total) {
+			throw new IllegalStateException("Output batch size " + Arrays.toString(
+				shape) + " does not match the merged input batch size " + total);
+		}
+		final int entrySize = (int) (output.getData().length / total);
+		final List<FloatTensor> res = new ArrayList<>(batch.size());
+		int offset = 0;
+		for (final Request request : batch) {
+			final long[] entryShape = shape.clone();
+			entryShape[0] = request.batchSize();
+			final int length = (int) request.batchSize() * entrySize;
+			res.add(new FloatTensor(entryShape, Arrays.copyOfRange(output.getData(),
+				offset, offset + length)));
+			offset += length;
+		}
+		return res;
+	}
+
+	/**
+	 * Stops merging tensors. Callers still waiting for a result get an error.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		dispatcher.interrupt();
+	}
+
+	static class Request {
+
+		final FloatTensor input;
+		final long created = System.currentTimeMillis();
+		final CompletableFuture<FloatTensor> result = new CompletableFuture<>();
+
+		Request(final FloatTensor input) {
+			this.input = input;
+		}
+
+		long batchSize() {
+			return input.getShape()[0];
+		}
+
+		boolean canMergeWith(final Request other) {
+			final long[] shape = input.getShape();
+			final long[] otherShape = other.input.getShape();
+			if (shape.length != otherShape.length) return false;
+			for (int i = 1; i < shape.length; i++) {
+				if (shape[i] != otherShape[i]) return false;
+			}
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.worker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A float tensor as it is sent between the coordinator and the workers: the
+ * shape followed by the values in row-major order.
+ */
+public class FloatTensor {
+
+	// refuse absurd sizes instead of allocating them when reading a broken
+	// stream
+	private static final int MAX_DIMENSIONS = 16;
+
+	private final long[] shape;
+	private final float[] data;
+
+	public FloatTensor(final long[] shape, final float[] data) {
+		if (numElements(shape) != data.length) {
+			throw new IllegalArgumentException("Shape does not match the number " +
+				"of values");
+		}
+		this.shape = shape;
+		this.data = data;
+	}
+
+	public long[] getShape() {
+		return shape;
+	}
+
+	public float[] getData() {
+		return data;
+	}
+
+	public static long numElements(final long[] shape) {
+		long res = 1;
+		for (final long size : shape) {
+			res *= size;
+		}
+		return res;
+	}
+
+	/**
+	 * @return the number of bytes written by {@link #write(DataOutputStream)}
+	 */
+	public long getNumBytes() {
+		return Integer.BYTES + (long) shape.length * Long.BYTES +
+			(long) data.length * Float.BYTES;
+	}
+
+	public void write(final DataOutputStream out) throws IOException {
+		out.writeInt(shape.length);
+		for (final long size : shape) {
+			out.writeLong(size);
+		}
+		final byte[] bytes = new byte[data.length * Float.BYTES];
+		ByteBuffer.wrap(bytes).asFloatBuffer().put(data);
+		out.write(bytes);
+	}
+
+	public static FloatTensor read(final DataInputStream in) throws IOException {
+		final int numDimensions = in.readInt();
+		if (numDimensions < 0 || numDimensions > MAX_DIMENSIONS) {
+			throw new IOException("Invalid number of dimensions: " + numDimensions);
+		}
+		final long[] shape = new long[numDimensions];
+		for (int i = 0; i < shape.length; i++) {
+			shape[i] = in.readLong();
+		}
+		final long numElements = numElements(shape);
+		if (numElements < 0 || numElements > Integer.MAX_VALUE / Float.BYTES) {
+			throw new IOException("Invalid tensor size: " + numElements);
+		}
+		final byte[] bytes = new byte[(int) numElements * Float.BYTES];
+		in.readFully(bytes);
+		final float[] data = new float[(int) numElements];
+		ByteBuffer.wrap(bytes).asFloatBuffer().get(data);
+		return new FloatTensor(shape, data);
+	}
+
+}
@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends tensors to a model of a running inference server, see
+ * {@code org.csbdeep.network.model.tensorflow.InferenceServer}.
+ */
+public class InferenceClient implements TensorProcessor {
+
+	public static final String CONTENT_TYPE = "application/octet-stream";
+
+	private final URL url;
+
+	/**
+	 * @param serverUrl base URL of the server, e.g. {@code http://localhost:8765}
+	 * @param modelName name of the model directory on the server
+	 */
+	public InferenceClient(final String serverUrl, final String modelName)
+		throws IOException
+	{
+		final String base = serverUrl.endsWith("/") ? serverUrl.substring(0,
+			serverUrl.length() - 1) : serverUrl;
+		url = new URL(base + "/models/" + URLEncoder.encode(modelName, "UTF-8"));
+	}
+
+	@Override
+	public FloatTensor process(final FloatTensor input) throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) url
+			.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+		connection.setFixedLengthStreamingMode(input.getNumBytes());
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			connection.getOutputStream())))
+		{
+			input.write(out);
+		}
+		final int status = connection.getResponseCode();
+		if (status != HttpURLConnection.HTTP_OK) {
+			throw new WorkerPool.WorkerException("Inference server returned " +
+				status + ": " + readError(connection));
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			connection.getInputStream())))
+		{
+			return FloatTensor.read(in);
+		}
+	}
+
+	private static String readError(final HttpURLConnection connection)
+		throws IOException
+	{
+		final InputStream stream = connection.getErrorStream();
+		if (stream == null) return connection.getResponseMessage();
+		try (InputStream in = stream) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
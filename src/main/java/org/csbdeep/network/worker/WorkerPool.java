@@ -0,0 +1,255 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.log.Logger;
+
+/**
+ * Coordinator side of the worker processes. Each call of
+ * {@link #process(FloatTensor)} takes the next idle worker from a queue, so
+ * the number of calls which can run at the same time equals the number of
+ * workers. If a worker dies or does not answer within the timeout while
+ * processing a tensor, it is removed from the pool and the tensor is sent to
+ * another worker.
+ */
+public class WorkerPool implements TensorProcessor, Closeable {
+
+	/**
+	 * How long a worker may take to answer, running the model on a large tile
+	 * on the CPU can take minutes.
+	 */
+	public static final int DEFAULT_TIMEOUT_MS = 10 * 60 * 1000;
+
+	private static final long POLL_INTERVAL_MS = 100;
+
+	private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+	private final AtomicInteger alive = new AtomicInteger();
+	private final Logger logger;
+	private volatile boolean closed = false;
+
+	public WorkerPool(final List<InetSocketAddress> addresses)
+		throws IOException
+	{
+		this(addresses, DEFAULT_TIMEOUT_MS, null);
+	}
+
+	/**
+	 * Connects to the given workers. Workers which cannot be reached are
+	 * skipped.
+	 *
+	 * @param timeoutMs how long to wait for a worker to connect or to answer
+	 * @param logger where unreachable and lost workers are reported, or null
+	 * @throws IOException if none of the workers can be reached
+	 */
+	public WorkerPool(final List<InetSocketAddress> addresses,
+		final int timeoutMs, final Logger logger) throws IOException
+	{
+		this.logger = logger;
+		for (final InetSocketAddress address : addresses) {
+			try {
+				idle.add(new Connection(address, timeoutMs));
+				alive.incrementAndGet();
+			}
+			catch (final IOException e) {
+				warn("Could not connect to worker " + address + ": " + e
+					.getMessage());
+			}
+		}
+		if (alive.get() == 0) {
+			throw new IOException("Could not connect to any worker");
+		}
+	}
+
+	/**
+	 * Parses a comma separated list of worker addresses. Each address is either
+	 * {@code host:port} or just the port of a worker on this machine.
+	 */
+	public static List<InetSocketAddress> parseAddresses(final String addresses) {
+		final List<InetSocketAddress> res = new ArrayList<>();
+		for (final String address : addresses.split(",")) {
+			final String trimmed = address.trim();
+			if (trimmed.isEmpty()) continue;
+			final int colon = trimmed.lastIndexOf(':');
+			if (colon < 0) {
+				res.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer
+					.parseInt(trimmed)));
+			}
+			else {
+				res.add(new InetSocketAddress(trimmed.substring(0, colon), Integer
+					.parseInt(trimmed.substring(colon + 1))));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return the number of workers which are still alive
+	 */
+	public int size() {
+		return alive.get();
+	}
+
+	/**
+	 * Computes the output of the given tensor on the next idle worker.
+	 *
+	 * @throws IOException if all workers died
+	 * @throws Exception if the worker could not process the tensor
+	 */
+	@Override
+	public FloatTensor process(final FloatTensor input) throws Exception {
+		while (true) {
+			final Connection connection = nextWorker();
+			final FloatTensor output;
+			try {
+				output = connection.send(input);
+			}
+			catch (final IOException e) {
+				// reassign the tensor to another worker
+				remove(connection);
+				warn("Lost worker " + connection.address + " (" + e.getMessage() +
+					"), " + alive.get() + " worker(s) left");
+				continue;
+			}
+			catch (final Exception e) {
+				release(connection);
+				throw e;
+			}
+			release(connection);
+			return output;
+		}
+	}
+
+	private Connection nextWorker() throws IOException, InterruptedException {
+		while (true) {
+			if (closed) throw new IOException("Worker pool is closed");
+			if (alive.get() == 0) throw new IOException("No workers left");
+			final Connection connection = idle.poll(POLL_INTERVAL_MS,
+				TimeUnit.MILLISECONDS);
+			if (connection != null) return connection;
+		}
+	}
+
+	private void release(final Connection connection) {
+		if (closed) connection.close();
+		else idle.add(connection);
+	}
+
+	private void remove(final Connection connection) {
+		connection.close();
+		alive.decrementAndGet();
+	}
+
+	private void warn(final String message) {
+		if (logger != null) logger.warn(message);
+	}
+
+	/**
+	 * Closes the connections to the workers. Workers keep running and can be
+	 * used by another pool.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Connection connection;
+		while ((connection = idle.poll()) != null) {
+			connection.close();
+		}
+	}
+
+	private static class Connection {
+
+		private final InetSocketAddress address;
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		Connection(final InetSocketAddress address, final int timeoutMs)
+			throws IOException
+		{
+			this.address = address;
+			socket = new Socket();
+			socket.connect(address, timeoutMs);
+			// a worker which hangs is treated like a worker which died
+			socket.setSoTimeout(timeoutMs);
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket
+				.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket
+				.getOutputStream()));
+		}
+
+		FloatTensor send(final FloatTensor input) throws Exception {
+			input.write(out);
+			out.flush();
+			final byte status = in.readByte();
+			if (status == WorkerServer.OK) return FloatTensor.read(in);
+			if (status == WorkerServer.ERROR) {
+				throw new WorkerException("Worker " + address + " failed: " + in
+					.readUTF());
+			}
+			throw new IOException("Invalid response from worker " + address);
+		}
+
+		void close() {
+			try {
+				socket.close();
+			}
+			catch (final IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Thrown if a worker could not process a tensor. The worker stays in the
+	 * pool.
+	 */
+	public static class WorkerException extends Exception {
+
+		public WorkerException(final String message) {
+			super(message);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.network.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.scijava.log.Logger;
+
+/**
+ * Runs a {@link TensorProcessor} for the coordinator, which connects via a
+ * socket and sends one input tensor after the other. Each input is answered
+ * with {@link #OK} followed by the output tensor, or with {@link #ERROR}
+ * followed by the error message if the processor failed. A failing processor
+ * does not end the connection.
+ */
+public class WorkerServer implements Closeable {
+
+	public static final byte OK = 0;
+	public static final byte ERROR = 1;
+
+	private final TensorProcessor processor;
+	private final ServerSocket serverSocket;
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+	private Logger logger;
+
+	/**
+	 * Listens on the given port of the loopback interface, port 0 picks a free
+	 * port.
+	 */
+	public WorkerServer(final TensorProcessor processor, final int port)
+		throws IOException
+	{
+		this(processor, new InetSocketAddress(InetAddress.getLoopbackAddress(),
+			port));
+	}
+
+	public WorkerServer(final TensorProcessor processor,
+		final InetSocketAddress address) throws IOException
+	{
+		this.processor = processor;
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address);
+	}
+
+	/**
+	 * Set where failures to accept connections are reported.
+	 */
+	public void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	public void start() {
+		pool.submit(this::acceptConnections);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	private void acceptConnections() {
+		while (!closed) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				connections.add(socket);
+				pool.submit(() -> serve(socket));
+			}
+			catch (final IOException e) {
+				if (!closed && logger != null) logger.warn(
+					"Worker stopped accepting connections: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					socket.getOutputStream())))
+		{
+			while (!closed) {
+				final FloatTensor input;
+				try {
+					input = FloatTensor.read(in);
+				}
+				catch (final EOFException e) {
+					// the coordinator closed the connection
+					return;
+				}
+				FloatTensor output = null;
+				String error = null;
+				try {
+					output = processor.process(input);
+				}
+				catch (final Exception e) {
+					error = String.valueOf(e.getMessage());
+				}
+				if (output != null) {
+					out.writeByte(OK);
+					output.write(out);
+				}
+				else {
+					out.writeByte(ERROR);
+					out.writeUTF(error != null ? error : "No output");
+				}
+				out.flush();
+			}
+		}
+		catch (final IOException e) {
+			// connection lost, the coordinator assigns the tile to another worker
+		}
+		finally {
+			connections.remove(socket);
+			closeQuietly(socket);
+		}
+	}
+
+	/**
+	 * Stops accepting connections and closes all open connections.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		closeQuietly(serverSocket);
+		for (final Socket socket : connections) {
+			closeQuietly(socket);
+		}
+		pool.shutdownNow();
+	}
+
+	private static void closeQuietly(final Closeable closeable) {
+		try {
+			closeable.close();
+		}
+		catch (final IOException ignored) {}
+	}
+
+}
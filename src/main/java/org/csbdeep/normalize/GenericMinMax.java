@@ -30,15 +30,19 @@
 package org.csbdeep.normalize;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.scijava.plugin.Plugin;
 
+import org.csbdeep.util.ChunkHelper;
 import net.imagej.ops.Op;
 import net.imagej.ops.Ops;
 import net.imagej.ops.special.function.AbstractUnaryFunctionOp;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
+import net.imglib2.view.Views;
 
 /**
  * {@link Op} to calculate the {@code stats.minMax}.
@@ -55,7 +59,8 @@ public class GenericMinMax<I extends RealType<I>> extends
 {
 
 	/**
-	 * Compute the min and max for any {@link Iterable}
+	 * Compute the min and max for any {@link Iterable}. Images are divided into
+	 * chunks which are processed in parallel.
 	 *
 	 * @param input - the input that has to just be {@link Iterable}
 	 */
@@ -63,6 +68,25 @@ public class GenericMinMax<I extends RealType<I>> extends
 
 		System.out.println("Generic min max calculator");
 
+		if (!(input instanceof RandomAccessibleInterval)) {
+			return calculateSequentially(input);
+		}
+
+		final List<Pair<I, I>> partials = ChunkHelper.forEachChunk(
+			(RandomAccessibleInterval<I>) input, chunk -> calculateSequentially(
+				Views.iterable(chunk)));
+
+		final I min = partials.get(0).getA();
+		final I max = partials.get(0).getB();
+		for (final Pair<I, I> partial : partials) {
+			if (partial.getA().compareTo(min) < 0) min.set(partial.getA());
+			if (partial.getB().compareTo(max) > 0) max.set(partial.getB());
+		}
+		return new ValuePair<>(min, max);
+	}
+
+	private Pair<I, I> calculateSequentially(final Iterable<I> input) {
+
 		// create a cursor for the image (the order does not matter)
 		final Iterator<I> iterator = input.iterator();
 
@@ -30,214 +30,257 @@
 package org.csbdeep.normalize;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
+import org.csbdeep.util.ChunkHelper;
 import net.imagej.ops.OpService;
 import net.imglib2.Cursor;
-import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.util.Pair;
-import net.imglib2.util.Util;
+import net.imglib2.view.Views;
 
+/**
+ * Computes exact percentiles without copying the image. The value range is
+ * narrowed down by repeated histogram passes until the bin containing the
+ * requested rank is small enough to be sorted. Memory usage only depends on
+ * the number of histogram bins, not on the number of pixels. Each pass
+ * processes chunks of the image in parallel and merges the partial
+ * histograms. NaN and infinite values are ignored.
+ */
 public class HistogramPercentile<T extends RealType<T>> implements
 	Percentile<T>
 {
 
-	T min, max;
-
-//	public float[] computePercentiles2(RandomAccessibleInterval<T> src,
-//		final float[] percentiles, OpService opService)
-//	{
-//
-//		float[] resValues = new float[percentiles.length];
-//
-//		computeMinMax(opService, (IterableInterval<T>) src);
-//
-//		if (min.compareTo(max) == 0) {
-//			Arrays.fill(resValues, min.getRealFloat());
-//			return resValues;
-//		}
-//
-//		int numBins = (int) Math.pow(2, 16);
-//		List<HistogramBin> bins = createHistogram(numBins,
-//			(IterableInterval<T>) src);
-//		long pixelCount = ((IterableInterval<T>) src).size();
-//
-//		for (int i = 0; i < percentiles.length; i++) {
-//			resValues[i] = getPercentile(percentiles[i], bins, pixelCount);
-//		}
-//
-//		return resValues;
-//
-//	}
-
-	public float[] computePercentiles(RandomAccessibleInterval<T> src, final float[] percentiles, OpService opService) {
-		final Cursor< T > cursor = ((IterableInterval)src).cursor();
-		int items = 1;
-		int i = 0;
-		for ( ; i < src.numDimensions(); i++ ) {
-			items *= src.dimension( i );
-		}
-		final float[] values = new float[ items ];
-		i = 0;
-		while ( cursor.hasNext() ) {
-			cursor.fwd();
-			values[ i ] = cursor.get().getRealFloat();
-			i++;
+	/** Number of bins of each refinement histogram. */
+	static final int NUM_BINS = 1 << 16;
+
+	/** Bins with less values than this are sorted instead of refined further. */
+	static final int MAX_SORTED_VALUES = 1 << 16;
+
+	@Override
+	public float[] computePercentiles(RandomAccessibleInterval<T> src,
+		final float[] percentiles, OpService opService)
+	{
+		final MinMax minMax = new MinMax();
+		for (final List<Accumulator> partials : iterate(src, () -> Arrays.asList(
+			new MinMax())))
+		{
+			minMax.merge((MinMax) partials.get(0));
 		}
 
-		Util.quicksort( values );
+		final float[] res = new float[percentiles.length];
+		if (minMax.count == 0) return res;
 
-		final float[] res = new float[ percentiles.length ];
-		for ( i = 0; i < percentiles.length; i++ ) {
-			res[ i ] = values[ Math.min(
-					values.length - 1,
-					Math.max( 0, Math.round( ( values.length - 1 ) * percentiles[ i ] / 100.f ) ) ) ];
+		final List<Refinement> open = new ArrayList<>();
+		final Refinement[] refinements = new Refinement[percentiles.length];
+		for (int i = 0; i < percentiles.length; i++) {
+			final long rank = Math.min(minMax.count - 1, Math.max(0, Math.round(
+				(minMax.count - 1) * (double) percentiles[i] / 100.)));
+			refinements[i] = new Refinement(rank, minMax.min, minMax.max,
+				minMax.count);
+			if (!refinements[i].done) open.add(refinements[i]);
 		}
 
-//		float[] res2 = computePercentiles2(src, percentiles, opService);
-//		for(int j = 0; j < res2.length; j++) {
-//			System.out.println(res[j] + " " + res2[j]);
-//		}
+		while (!open.isEmpty()) {
+			final List<List<Accumulator>> partials = iterate(src, () -> {
+				final List<Accumulator> accumulators = new ArrayList<>();
+				open.forEach(refinement -> accumulators.add(refinement
+					.createPartial()));
+				return accumulators;
+			});
+			for (int i = 0; i < open.size(); i++) {
+				final List<Partial> refinementPartials = new ArrayList<>();
+				for (final List<Accumulator> chunkPartials : partials) {
+					refinementPartials.add((Partial) chunkPartials.get(i));
+				}
+				open.get(i).finishPass(refinementPartials);
+			}
+			open.removeIf(refinement -> refinement.done);
+		}
 
+		for (int i = 0; i < res.length; i++) {
+			res[i] = refinements[i].result;
+		}
 		return res;
 	}
 
-	private void computeMinMax(OpService opService, IterableInterval<T> src) {
-		// System.out.println("interval size: " + src.size());
-		//
-		// long milStart = System.currentTimeMillis();
-		// final Pair<T,T> minMax =
-		// (Pair<T,T>) opService.run(GenericMinMax.class, src);
-		// long timeGeneric = System.currentTimeMillis() - milStart;
-		// milStart = System.currentTimeMillis();
-		final Pair<T, T> minMax = opService.stats().minMax(src);
-		// long timeDefault = System.currentTimeMillis() - milStart;
-		//
-		// System.out.println("Generic: " + timeGeneric / 1000.);
-		// System.out.println("Default: " + timeDefault / 1000.);
-		//
-		min = minMax.getA();
-		max = minMax.getB();
-	}
-
-	private List<HistogramBin> createHistogram(int numBins,
-		IterableInterval<T> src)
+	/**
+	 * Lets a new list of accumulators visit each chunk of the image in
+	 * parallel.
+	 *
+	 * @return the accumulators of each chunk
+	 */
+	private List<List<Accumulator>> iterate(
+		final RandomAccessibleInterval<T> image,
+		final Supplier<List<Accumulator>> accumulators)
 	{
-		List<HistogramBin> bins = new ArrayList<>(numBins);
-		float binLength = getBinLength(numBins);
-
-		for (int i = 0; i < numBins; i++)
-			bins.add(new HistogramBin());
-
-		Cursor<T> cursor = src.cursor();
-		while (cursor.hasNext()) {
-			cursor.fwd();
-			T val = cursor.get();
-			int binId = Math.min(numBins - 1, getBin(val, min, binLength));
-			HistogramBin bin = bins.get(binId);
-			bin.count++;
-			if (bin.min == null) bin.min = val.copy();
-			else if (bin.min.compareTo(val) > 0) bin.min.set(val.copy());
-			if (bin.max == null) bin.max = val.copy();
-			else if (bin.max.compareTo(val) < 0) bin.max.set(val.copy());
-		}
-		bins.get(0).min = min.copy();
-		bins.get(bins.size() - 1).max = max.copy();
-		return bins;
+		return ChunkHelper.forEachChunk(image, chunk -> {
+			final List<Accumulator> chunkAccumulators = accumulators.get();
+			final Accumulator[] array = chunkAccumulators.toArray(
+				new Accumulator[0]);
+			final Cursor<T> cursor = Views.iterable(chunk).cursor();
+			while (cursor.hasNext()) {
+				final float value = cursor.next().getRealFloat();
+				for (final Accumulator accumulator : array) {
+					accumulator.add(value);
+				}
+			}
+			return chunkAccumulators;
+		});
 	}
 
-	private float getBinLength(int numBins) {
-		return (max.getRealFloat() - min.getRealFloat()) / (float) numBins;
+	private interface Accumulator {
+
+		void add(float value);
 	}
 
-	private int getBin(T val, T min, float binLength) {
-		T res = val.copy();
-		res.sub(min);
-		res.mul(1. / binLength);
-		return (int) res.getRealFloat();
+	private static class MinMax implements Accumulator {
+
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		long count = 0;
+
+		@Override
+		public void add(final float value) {
+			// an infinite value range could not be split into bins
+			if (!Float.isFinite(value)) return;
+			if (value < min) min = value;
+			if (value > max) max = value;
+			count++;
+		}
+
+		void merge(final MinMax other) {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			count += other.count;
+		}
 	}
 
-	private float getPercentile(float percentile, List<HistogramBin> bins,
-		long pixelCount)
-	{
-		float border = pixelCount * percentile / 100.f;
-		float cur = 0;
-		int i;
-		float percentileMax, percentileMin;
-		if (percentile > 50) {
-			border = pixelCount - border;
-			for (i = bins.size() - 1; i >= 0 && cur < border; i--) {
-				cur += bins.get(i).count;
-			}
-			percentileMin = (1 - cur / pixelCount) * 100;
-			if (i < bins.size() - 1) {
-				i++;
-				percentileMax = (1 - (cur - bins.get(i).count) / pixelCount) * 100;
-			}
-			else {
-				percentileMax = 100;
+	/**
+	 * Narrows down the value of the given rank. All values in [lo, hi] are
+	 * candidates, {@code below} values are smaller than lo.
+	 */
+	private static class Refinement {
+
+		final long rank;
+		float lo, hi;
+		long below;
+		long candidates;
+
+		boolean done = false;
+		float result;
+
+		Refinement(final long rank, final float min, final float max,
+			final long count)
+		{
+			this.rank = rank;
+			lo = min;
+			hi = max;
+			below = 0;
+			candidates = count;
+			checkDone();
+		}
+
+		Partial createPartial() {
+			if (candidates <= MAX_SORTED_VALUES) {
+				return new Partial(lo, hi, (int) candidates);
 			}
+			return new Partial(lo, hi, NUM_BINS / ((double) hi - (double) lo));
 		}
-		else {
-			for (i = 0; i < bins.size() && cur < border; i++) {
-				cur += bins.get(i).count;
+
+		void finishPass(final List<Partial> partials) {
+			if (partials.get(0).values != null) {
+				final float[] values = new float[(int) candidates];
+				int numValues = 0;
+				for (final Partial partial : partials) {
+					System.arraycopy(partial.values, 0, values, numValues,
+						partial.numValues);
+					numValues += partial.numValues;
+				}
+				Arrays.sort(values, 0, numValues);
+				result = values[(int) (rank - below)];
+				done = true;
+				return;
 			}
-			percentileMax = cur / pixelCount * 100;
-			if (i > 0) {
-				i--;
-				percentileMin = (cur - bins.get(i).count) / pixelCount * 100;
+			final Partial merged = partials.get(0);
+			for (int i = 1; i < partials.size(); i++) {
+				merged.merge(partials.get(i));
 			}
-			else {
-				percentileMin = 0;
+			long cumulated = below;
+			for (int bin = 0; bin < NUM_BINS; bin++) {
+				if (rank < cumulated + merged.counts[bin]) {
+					lo = merged.binMin[bin];
+					hi = merged.binMax[bin];
+					below = cumulated;
+					candidates = merged.counts[bin];
+					break;
+				}
+				cumulated += merged.counts[bin];
 			}
+			checkDone();
 		}
-		HistogramBin bin = bins.get(i);
-		if (percentile < percentileMax && percentile > percentileMin) {
-			return getY(percentile, percentileMin, bin.min, percentileMax, bin.max);
-		}
-		else {
-			if (percentile < percentileMin) {
-				HistogramBin prevBin = getPreviousBin(bins, i);
-				if (prevBin != null) return getY(percentile, percentileMin, bin.min,
-					percentileMin - 1.f / (float) pixelCount, prevBin.max);
-				else return bin.min.getRealFloat();
-			}
-			else {
-				HistogramBin nextBin = getNextBin(bins, i);
-				if (nextBin != null) return getY(percentile, percentileMax, bin.max,
-					percentileMax + 1.f / (float) pixelCount, nextBin.min);
-				else return bin.max.getRealFloat();
+
+		private void checkDone() {
+			if (lo == hi) {
+				result = lo;
+				done = true;
 			}
 		}
 	}
 
-	private float getY(float x, float x1, T y1, float x2, T y2) {
-		float m = (y2.getRealFloat() - y1.getRealFloat()) / (x2 - x1);
-		float n = (y1.getRealFloat() * x2 - y2.getRealFloat() * x1) / (x2 - x1);
-		return m*x+n;
-	}
+	/**
+	 * Histogram or collected values of the candidates of a {@link Refinement}
+	 * within one chunk of the image.
+	 */
+	private static class Partial implements Accumulator {
+
+		private final float lo, hi;
+		private double scale;
+		private long[] counts;
+		private float[] binMin, binMax;
+		private float[] values;
+		private int numValues;
 
-	private HistogramBin getPreviousBin(List<HistogramBin> bins, int i) {
-		while (i > 0) {
-			if (bins.get(--i).count > 0) return bins.get(i);
+		Partial(final float lo, final float hi, final int maxValues) {
+			this.lo = lo;
+			this.hi = hi;
+			values = new float[maxValues];
 		}
-		return null;
-	}
 
-	private HistogramBin getNextBin(List<HistogramBin> bins, int i) {
-		while (i < bins.size() - 1) {
-			if (bins.get(++i).count > 0) return bins.get(i);
+		Partial(final float lo, final float hi, final double scale) {
+			this.lo = lo;
+			this.hi = hi;
+			this.scale = scale;
+			counts = new long[NUM_BINS];
+			binMin = new float[NUM_BINS];
+			binMax = new float[NUM_BINS];
+			Arrays.fill(binMin, Float.POSITIVE_INFINITY);
+			Arrays.fill(binMax, Float.NEGATIVE_INFINITY);
 		}
-		return null;
-	}
 
-	private class HistogramBin {
+		@Override
+		public void add(final float value) {
+			if (!(value >= lo && value <= hi)) return;
+			if (values != null) {
+				values[numValues++] = value;
+				return;
+			}
+			final int bin = (int) Math.min(NUM_BINS - 1, (value - (double) lo) *
+				scale);
+			counts[bin]++;
+			if (value < binMin[bin]) binMin[bin] = value;
+			if (value > binMax[bin]) binMax[bin] = value;
+		}
 
-		int count;
-		T min;
-		T max;
+		void merge(final Partial other) {
+			for (int bin = 0; bin < NUM_BINS; bin++) {
+				counts[bin] += other.counts[bin];
+				binMin[bin] = Math.min(binMin[bin], other.binMin[bin]);
+				binMax[bin] = Math.max(binMax[bin], other.binMax[bin]);
+			}
+		}
 	}
 
 }
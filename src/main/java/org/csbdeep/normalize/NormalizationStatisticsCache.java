@@ -0,0 +1,244 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.normalize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+import org.csbdeep.util.ChunkHelper;
+import org.scijava.log.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Stores normalization statistics on disk so that they don't have to be
+ * recomputed when the same image gets normalized again. Entries are keyed by
+ * a hash of the image content and the requested percentiles. The least
+ * recently used entries are removed if the cache holds more than the maximum
+ * number of entries.
+ */
+public class NormalizationStatisticsCache {
+
+	public static final String DIRECTORY_NAME = "normalization";
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	// fixed number of chunks, the hash must not depend on the number of cores
+	private static final int NUM_HASH_CHUNKS = 64;
+	private static final int HASH_BUFFER_SIZE = 1 << 16;
+	private static final String SUFFIX = ".json";
+
+	private final File directory;
+	private final int maxEntries;
+	private final Gson gson = new Gson();
+	private Logger logger;
+
+	// the last computed key, so that a run which asks for the key of its input
+	// several times hashes the input only once
+	private Object lastImage;
+	private float[] lastPercentiles;
+	private String lastKey;
+
+	/**
+	 * @param modelsDirectory the directory where the models are cached, the
+	 *          statistics are stored in the subdirectory {@link #DIRECTORY_NAME}
+	 */
+	public NormalizationStatisticsCache(final File modelsDirectory) {
+		this(modelsDirectory, DEFAULT_MAX_ENTRIES);
+	}
+
+	public NormalizationStatisticsCache(final File modelsDirectory,
+		final int maxEntries)
+	{
+		this.directory = new File(modelsDirectory, DIRECTORY_NAME);
+		this.maxEntries = Math.max(1, maxEntries);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Set where failures to read or write the cache are reported.
+	 */
+	public void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Computes the key of the statistics of the given image and percentiles.
+	 * This needs one (parallel) pass over the image, which is still much
+	 * cheaper than computing the percentiles. The key of the last image is
+	 * reused if the same image instance is passed again, so the image must not
+	 * change while the cache is used for it.
+	 */
+	public synchronized <T extends RealType<T>> String getKey(
+		final RandomAccessibleInterval<T> image, final float[] percentiles)
+	{
+		if (image == lastImage && Arrays.equals(percentiles, lastPercentiles)) {
+			return lastKey;
+		}
+		final MessageDigest digest = createDigest();
+		final ByteBuffer header = ByteBuffer.allocate(8 * image.numDimensions() +
+			4 * percentiles.length);
+		for (int d = 0; d < image.numDimensions(); d++) {
+			header.putLong(image.dimension(d));
+		}
+		for (final float percentile : percentiles) {
+			header.putFloat(percentile);
+		}
+		digest.update(header.array());
+		final List<byte[]> chunkDigests = ChunkHelper.forEachChunk(image,
+			NUM_HASH_CHUNKS, NormalizationStatisticsCache::hashChunk);
+		chunkDigests.forEach(digest::update);
+		lastImage = image;
+		lastPercentiles = percentiles.clone();
+		lastKey = Hex.encodeHexString(digest.digest());
+		return lastKey;
+	}
+
+	private static <T extends RealType<T>> byte[] hashChunk(
+		final RandomAccessibleInterval<T> chunk)
+	{
+		// the percentiles are computed from the float values, so hash these
+		final MessageDigest digest = createDigest();
+		final ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		final Cursor<T> cursor = Views.flatIterable(chunk).cursor();
+		while (cursor.hasNext()) {
+			if (buffer.remaining() < 4) {
+				digest.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putFloat(cursor.next().getRealFloat());
+		}
+		digest.update(buffer.array(), 0, buffer.position());
+		return digest.digest();
+	}
+
+	/**
+	 * @return the cached values or null if there is no valid entry for the key
+	 */
+	public float[] get(final String key, final float[] percentiles) {
+		final File file = getFile(key);
+		if (!file.exists()) return null;
+		final Entry entry;
+		try (Reader reader = Files.newBufferedReader(file.toPath(),
+			StandardCharsets.UTF_8))
+		{
+			entry = gson.fromJson(reader, Entry.class);
+		}
+		catch (IOException | JsonParseException e) {
+			warn("Ignoring invalid normalization cache entry " + file, e);
+			file.delete();
+			return null;
+		}
+		if (entry == null || entry.values == null || !Arrays.equals(
+			entry.percentiles, percentiles)) return null;
+		file.setLastModified(System.currentTimeMillis());
+		return entry.values;
+	}
+
+	public void put(final String key, final float[] percentiles,
+		final float[] values)
+	{
+		if (!directory.exists() && !directory.mkdirs()) return;
+		final Entry entry = new Entry();
+		entry.percentiles = percentiles;
+		entry.values = values;
+		try {
+			// write to a temporary file first so that no other run reads a
+			// partial entry
+			final File tmp = File.createTempFile(key, ".tmp", directory);
+			try (Writer writer = Files.newBufferedWriter(tmp.toPath(),
+				StandardCharsets.UTF_8))
+			{
+				gson.toJson(entry, writer);
+			}
+			Files.move(tmp.toPath(), getFile(key).toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (final IOException e) {
+			warn("Could not write normalization cache entry to " + directory, e);
+			return;
+		}
+		evict();
+	}
+
+	private void evict() {
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(
+			SUFFIX));
+		if (files == null || files.length <= maxEntries) return;
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length - maxEntries; i++) {
+			files[i].delete();
+		}
+	}
+
+	private void warn(final String message, final Exception e) {
+		if (logger != null) logger.warn(message + ": " + e.getMessage());
+	}
+
+	private File getFile(final String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Entry {
+
+		float[] percentiles;
+		float[] values;
+	}
+
+}
@@ -32,6 +32,7 @@ package org.csbdeep.normalize;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ops.OpService;
+import net.imglib2.Interval;
 
 public interface Normalizer {
 
@@ -39,4 +40,23 @@ public interface Normalizer {
 		DatasetService datasetService);
 
 	void setup(float[] percentiles, float[] destValues, boolean clip);
+
+	/**
+	 * If set, {@link #normalize} returns a view which normalizes the values
+	 * when they are read instead of a normalized copy of the input.
+	 */
+	void setLazy(boolean lazy);
+
+	/**
+	 * Sets the cache used to look up and store the statistics of the input,
+	 * {@code null} disables caching.
+	 */
+	void setStatisticsCache(NormalizationStatisticsCache cache);
+
+	/**
+	 * Restricts the output of {@link #normalize} to the given region of the
+	 * input, the statistics are still computed on the whole input. The output
+	 * starts at zero. {@code null} normalizes the whole input.
+	 */
+	void setRegion(Interval region);
 }
@@ -31,14 +31,22 @@ package org.csbdeep.normalize;
 
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
 import net.imagej.axis.AxisType;
 import net.imagej.ops.OpService;
 import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
 
 public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 	implements Normalizer
@@ -48,40 +56,56 @@ public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 	private float[] destValues = new float[] { 0, 1 };
 	private float[] resValues;
 	private boolean clip = false;
+	private boolean lazy = false;
+	private NormalizationStatisticsCache cache;
+	private Interval region;
 
 	protected float min;
 	protected float max;
 	protected float factor;
 
 	public float normalize( final T val ) {
+		return normalize( val.getRealFloat(), resValues[0], factor, min, max, clip );
+	}
+
+	private static float normalize( final float val, final float offset,
+			final float factor, final float min, final float max, final boolean clip ) {
 		if ( clip ) { return Math.max(
 				min,
-				Math.min( max, ( val.getRealFloat() - resValues[0] ) * factor + min ) ); }
-		return Math.max( 0, ( val.getRealFloat() - resValues[0] ) * factor + min );
+				Math.min( max, ( val - offset ) * factor + min ) ); }
+		return Math.max( 0, ( val - offset ) * factor + min );
 	}
 
 	@Override
 	public Dataset normalize(final Dataset im, OpService opService,
 		DatasetService datasetService)
 	{
-		HistogramPercentile<T> percentile = new HistogramPercentile<>();
-		resValues = percentile.computePercentiles((RandomAccessibleInterval<T>) im
-			.getImgPlus(), percentiles, opService);
+		resValues = computePercentiles(im, opService);
 		min = destValues[0];
 		max = destValues[1];
 		factor = (destValues[1] - destValues[0]) / (resValues[1] - resValues[0]);
 
-		long[] dims = new long[im.numDimensions()];
-		im.dimensions(dims);
+		RandomAccessibleInterval<T> source = (RandomAccessibleInterval<T>) im
+			.getImgPlus();
+		if (region != null) {
+			source = Views.zeroMin(Views.interval(source, region));
+		}
+
+		long[] dims = Intervals.dimensionsAsLongArray(source);
 		AxisType[] axes = new AxisType[im.numDimensions()];
 		for (int i = 0; i < axes.length; i++) {
 			axes[i] = im.axis(i).type();
 		}
 
+		if (lazy) {
+			return datasetService.create(new ImgPlus<>(normalizedView(source),
+				"normalized input", axes));
+		}
+
 		final Dataset output = datasetService.create(new FloatType(), dims,
 			"normalized input", axes);
 
-		final RandomAccess<T> in = (RandomAccess<T>) im.getImgPlus().randomAccess();
+		final RandomAccess<T> in = source.randomAccess();
 		final Cursor<FloatType> out = (Cursor<FloatType>) output.getImgPlus()
 			.localizingCursor();
 		while (out.hasNext()) {
@@ -93,6 +117,41 @@ public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 		return output;
 	}
 
+	private float[] computePercentiles(final Dataset im,
+		final OpService opService)
+	{
+		final RandomAccessibleInterval<T> in = (RandomAccessibleInterval<T>) im
+			.getImgPlus();
+		final HistogramPercentile<T> percentile = new HistogramPercentile<>();
+		if (cache == null) {
+			return percentile.computePercentiles(in, percentiles, opService);
+		}
+		final String key = cache.getKey(in, percentiles);
+		float[] values = cache.get(key, percentiles);
+		if (values == null) {
+			values = percentile.computePercentiles(in, percentiles, opService);
+			cache.put(key, percentiles, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Wraps the input into a view which normalizes each value on access, the
+	 * normalized image is never stored.
+	 */
+	private Img<FloatType> normalizedView(final RandomAccessibleInterval<T> in) {
+		// the view keeps the current values even if this normalizer is reused
+		final float offset = resValues[0];
+		final float factor = this.factor;
+		final float min = this.min;
+		final float max = this.max;
+		final boolean clip = this.clip;
+		final RandomAccessibleInterval<FloatType> converted = Converters.convert(
+			in, (i, o) -> o.set(normalize(i.getRealFloat(), offset, factor, min,
+				max, clip)), new FloatType());
+		return ImgView.wrap(converted, new ArrayImgFactory<>(new FloatType()));
+	}
+
 	@Override
 	public void setup(final float[] percentiles, final float[] destValues,
 		boolean clip)
@@ -104,6 +163,21 @@ public class PercentileNormalizer<T extends RealType<T> & NativeType<T>>
 		this.clip = clip;
 	}
 
+	@Override
+	public void setLazy(final boolean lazy) {
+		this.lazy = lazy;
+	}
+
+	@Override
+	public void setStatisticsCache(final NormalizationStatisticsCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public void setRegion(final Interval region) {
+		this.region = region;
+	}
+
 	public float[] getResValues() {
 		return resValues;
 	}
@@ -0,0 +1,110 @@
+
+package org.csbdeep.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Metrics of all stages of a pipeline run, in the order the stages were
+ * created. They can be dumped as JSON or in the Prometheus text format.
+ */
+public class PipelineMetrics {
+
+	private final Map<String, StageMetrics> stages = new LinkedHashMap<>();
+
+	/**
+	 * @return the metrics of the given stage, created if they do not exist yet
+	 */
+	public synchronized StageMetrics get(final String stage) {
+		return stages.computeIfAbsent(stage, StageMetrics::new);
+	}
+
+	public synchronized List<StageMetrics> getStages() {
+		return new ArrayList<>(stages.values());
+	}
+
+	public String toJson() {
+		final Map<String, Map<String, Object>> res = new LinkedHashMap<>();
+		for (final StageMetrics stage : getStages()) {
+			final Map<String, Object> values = new LinkedHashMap<>();
+			values.put("wallTimeSeconds", seconds(stage.getWallTimeNanos()));
+			values.put("tiles", stage.getTiles());
+			values.put("tilesPerSecond", stage.getTilesPerSecond());
+			values.put("voxels", stage.getVoxels());
+			values.put("voxelsPerSecond", stage.getVoxelsPerSecond());
+			values.put("bytes", stage.getBytes());
+			values.put("conversionSeconds", seconds(stage.getConversionNanos()));
+			values.put("runSeconds", seconds(stage.getRunNanos()));
+			values.put("outOfMemoryRetries", stage.getOutOfMemoryRetries());
+			res.put(stage.getName(), values);
+		}
+		return new GsonBuilder().setPrettyPrinting().create().toJson(res);
+	}
+
+	public String toPrometheus() {
+		final List<StageMetrics> stages = getStages();
+		final StringBuilder res = new StringBuilder();
+		appendMetric(res, stages, "wall_time_seconds", "gauge",
+			"Wall time of the stage", s -> seconds(s.getWallTimeNanos()));
+		appendMetric(res, stages, "tiles_total", "counter",
+			"Tiles processed by the stage", StageMetrics::getTiles);
+		appendMetric(res, stages, "tiles_per_second", "gauge",
+			"Tiles processed per second of wall time",
+			StageMetrics::getTilesPerSecond);
+		appendMetric(res, stages, "voxels_total", "counter",
+			"Input voxels processed by the stage", StageMetrics::getVoxels);
+		appendMetric(res, stages, "voxels_per_second", "gauge",
+			"Input voxels processed per second of wall time",
+			StageMetrics::getVoxelsPerSecond);
+		appendMetric(res, stages, "bytes_total", "counter",
+			"Size of the tensors passed to and from the model",
+			StageMetrics::getBytes);
+		appendMetric(res, stages, "conversion_seconds_total", "counter",
+			"Time spent converting between images and tensors", s -> seconds(s
+				.getConversionNanos()));
+		appendMetric(res, stages, "run_seconds_total", "counter",
+			"Time spent running the model", s -> seconds(s.getRunNanos()));
+		appendMetric(res, stages, "out_of_memory_retries_total", "counter",
+			"Retries after running out of memory",
+			StageMetrics::getOutOfMemoryRetries);
+		return res.toString();
+	}
+
+	private static void appendMetric(final StringBuilder res,
+		final List<StageMetrics> stages, final String name, final String type,
+		final String help, final ToDoubleFunction<StageMetrics> value)
+	{
+		final String metric = "csbdeep_stage_" + name;
+		res.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+		res.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+		for (final StageMetrics stage : stages) {
+			res.append(metric).append("{stage=\"").append(stage.getName().replace(
+				"\\", "\\\\").replace("\"", "\\\"")).append("\"} ").append(value
+					.applyAsDouble(stage)).append('\n');
+		}
+	}
+
+	/**
+	 * Writes the metrics to the given file, in the Prometheus text format if the
+	 * file name ends with {@code .prom}, as JSON otherwise.
+	 */
+	public void write(final File file) throws IOException {
+		final String content = file.getName().endsWith(".prom") ? toPrometheus()
+			: toJson();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static double seconds(final long nanos) {
+		return nanos / 1e9;
+	}
+
+}
@@ -0,0 +1,116 @@
+
+package org.csbdeep.task;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of one pipeline stage. The wall time is taken from the state of
+ * the stage's task force, the other values are added by the code doing the
+ * work and can be updated from several threads.
+ */
+public class StageMetrics {
+
+	private final String name;
+	private long startedAt = -1;
+	private long wallTimeNanos = 0;
+	private final LongAdder tiles = new LongAdder();
+	private final LongAdder voxels = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder conversionNanos = new LongAdder();
+	private final LongAdder runNanos = new LongAdder();
+	private final AtomicInteger outOfMemoryRetries = new AtomicInteger();
+
+	public StageMetrics(final String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	synchronized void start() {
+		if (startedAt < 0) startedAt = System.nanoTime();
+	}
+
+	synchronized void stop() {
+		if (startedAt < 0) return;
+		wallTimeNanos += System.nanoTime() - startedAt;
+		startedAt = -1;
+	}
+
+	/**
+	 * @param tiles number of processed tiles
+	 * @param voxels number of input voxels of these tiles
+	 * @param bytes size of the input and output tensors of these tiles
+	 */
+	public void addTiles(final long tiles, final long voxels, final long bytes) {
+		this.tiles.add(tiles);
+		this.voxels.add(voxels);
+		this.bytes.add(bytes);
+	}
+
+	/**
+	 * Adds time spent converting between images and tensors.
+	 */
+	public void addConversionTime(final long nanos) {
+		conversionNanos.add(nanos);
+	}
+
+	/**
+	 * Adds time spent running the model.
+	 */
+	public void addRunTime(final long nanos) {
+		runNanos.add(nanos);
+	}
+
+	public void addOutOfMemoryRetry() {
+		outOfMemoryRetries.incrementAndGet();
+	}
+
+	/**
+	 * @return the time the stage was running, including the current run
+	 */
+	public synchronized long getWallTimeNanos() {
+		return startedAt < 0 ? wallTimeNanos : wallTimeNanos + System.nanoTime() -
+			startedAt;
+	}
+
+	public long getTiles() {
+		return tiles.sum();
+	}
+
+	public long getVoxels() {
+		return voxels.sum();
+	}
+
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	public long getConversionNanos() {
+		return conversionNanos.sum();
+	}
+
+	public long getRunNanos() {
+		return runNanos.sum();
+	}
+
+	public int getOutOfMemoryRetries() {
+		return outOfMemoryRetries.get();
+	}
+
+	public double getTilesPerSecond() {
+		return perSecond(getTiles());
+	}
+
+	public double getVoxelsPerSecond() {
+		return perSecond(getVoxels());
+	}
+
+	private double perSecond(final long count) {
+		final long nanos = getWallTimeNanos();
+		return nanos > 0 ? count * 1e9 / nanos : 0;
+	}
+
+}
@@ -9,6 +9,7 @@ import org.scijava.log.Logger;
 public class TaskForceManager extends DefaultTaskManager {
 
 	private final List<TaskForce> taskForces;
+	private final PipelineMetrics metrics = new PipelineMetrics();
 
 	public TaskForceManager(boolean headless, Logger logger) {
 		super(headless, logger);
@@ -45,7 +46,9 @@ public class TaskForceManager extends DefaultTaskManager {
 		}
 		else {
 			final TaskForce taskForce = taskForces.get(index);
+			final StageMetrics stageMetrics = metrics.get(taskForce.getTitle());
 			if (taskForce.isStarted()) {
+				stageMetrics.start();
 				taskPresenter.setTaskStarted(index);
 				if (task.numSteps() > 1) {
 					taskPresenter.setTaskNumSteps(index, task.numSteps());
@@ -53,9 +56,11 @@ public class TaskForceManager extends DefaultTaskManager {
 				}
 			}
 			if (taskForce.isFailed()) {
+				stageMetrics.stop();
 				taskPresenter.setTaskFailed(index);
 			}
 			if (taskForce.isFinished()) {
+				stageMetrics.stop();
 				taskPresenter.setTaskDone(index);
 			}
 		}
@@ -66,6 +71,7 @@ public class TaskForceManager extends DefaultTaskManager {
 	{
 		final TaskForce taskForce = new TaskForce(codeName, tasks, taskPresenter);
 		taskForces.add(taskForce);
+		metrics.get(codeName);
 		taskForce.setManager(this);
 		taskPresenter.addTask(taskForce.getTitle());
 		for (final Task task : tasks) {
@@ -73,4 +79,23 @@ public class TaskForceManager extends DefaultTaskManager {
 		}
 	}
 
+	/**
+	 * @return the metrics of the task forces, keyed by their code name
+	 */
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics of the task force the given task belongs to, or null
+	 */
+	public StageMetrics getMetrics(final Task task) {
+		for (final TaskForce taskForce : taskForces) {
+			for (final Task subtask : taskForce.getTasks()) {
+				if (task.equals(subtask)) return metrics.get(taskForce.getTitle());
+			}
+		}
+		return null;
+	}
+
 }
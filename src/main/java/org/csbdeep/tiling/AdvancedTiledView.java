@@ -16,6 +16,8 @@ public class AdvancedTiledView<T extends RealType<T>> extends TiledView<T> {
 	private final Map<AxisType, Long> originalDims;
 	private final AxisType[] originalAxes;
 	private List<RandomAccessibleInterval<T>> processedTiles;
+	private boolean paddingRemoved = false;
+	private RandomAccessibleInterval<T> mergedOutput = null;
 	// protected int blockMultiple;
 	// protected long blockWidth;
 
@@ -48,6 +50,29 @@ public class AdvancedTiledView<T extends RealType<T>> extends TiledView<T> {
 		return originalAxes;
 	}
 
+	/**
+	 * @return true if the padding was already removed from the processed tiles
+	 */
+	public boolean isPaddingRemoved() {
+		return paddingRemoved;
+	}
+
+	public void setPaddingRemoved(final boolean paddingRemoved) {
+		this.paddingRemoved = paddingRemoved;
+	}
+
+	/**
+	 * @return the output assembled while the tiles were processed, or null if
+	 *         the processed tiles still need to be merged
+	 */
+	public RandomAccessibleInterval<T> getMergedOutput() {
+		return mergedOutput;
+	}
+
+	public void setMergedOutput(final RandomAccessibleInterval<T> mergedOutput) {
+		this.mergedOutput = mergedOutput;
+	}
+
 	public void dispose() {
 		// if(originalDims != null) {
 		// originalDims.clear();
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Decides which tiles only contain background, based on a cheap statistic of
+ * the (normalized) input tile, and what their result is instead of the model
+ * output.
+ */
+public class BackgroundTiles {
+
+	public enum Statistic {
+			/** Background if no value is above the threshold. */
+			MAX,
+			/** Background if the mean is not above the threshold. */
+			MEAN,
+			/**
+			 * Background if less than the given fraction of the values is above the
+			 * threshold.
+			 */
+			FRACTION_ABOVE
+	}
+
+	public enum Fill {
+			/** The result is filled with a constant value. */
+			CONSTANT,
+			/** The result is the input tile. */
+			PASSTHROUGH
+	}
+
+	private final Statistic statistic;
+	private final float threshold;
+	private final float fraction;
+	private final Fill fill;
+	private final float fillValue;
+
+	/**
+	 * @param statistic the statistic computed for each tile
+	 * @param threshold tiles are background if the statistic does not exceed
+	 *          this value
+	 * @param fraction minimal fraction of values above the threshold of a tile
+	 *          with content, only used with {@link Statistic#FRACTION_ABOVE}
+	 * @param fill how the result of a background tile is created
+	 * @param fillValue value of background results with {@link Fill#CONSTANT}
+	 */
+	public BackgroundTiles(final Statistic statistic, final float threshold,
+		final float fraction, final Fill fill, final float fillValue)
+	{
+		this.statistic = statistic;
+		this.threshold = threshold;
+		this.fraction = fraction;
+		this.fill = fill;
+		this.fillValue = fillValue;
+	}
+
+	public Fill getFill() {
+		return fill;
+	}
+
+	public boolean isBackground(
+		final RandomAccessibleInterval<? extends RealType<?>> tile)
+	{
+		final Cursor<? extends RealType<?>> cursor = Views.iterable(tile)
+			.cursor();
+		final long size = Views.iterable(tile).size();
+		if (size == 0) return true;
+		switch (statistic) {
+			case MAX:
+				while (cursor.hasNext()) {
+					if (cursor.next().getRealDouble() > threshold) return false;
+				}
+				return true;
+			case MEAN:
+				double sum = 0;
+				while (cursor.hasNext()) {
+					sum += cursor.next().getRealDouble();
+				}
+				return sum / size <= threshold;
+			case FRACTION_ABOVE:
+			default:
+				// stop as soon as enough values are above the threshold
+				final double needed = fraction * (double) size;
+				long above = 0;
+				while (cursor.hasNext()) {
+					if (cursor.next().getRealDouble() > threshold && ++above >= needed) {
+						return false;
+					}
+				}
+				return true;
+		}
+	}
+
+	/**
+	 * @param tile the input tile
+	 * @param outputDims dimensions of the model output for a tile of this size
+	 * @return the result of a background tile, or null if it cannot be created
+	 *         with the configured fill for this output size
+	 */
+	public <T extends RealType<T>> RandomAccessibleInterval<T> createResult(
+		final RandomAccessibleInterval<T> tile, final long[] outputDims)
+	{
+		if (fill == Fill.PASSTHROUGH) {
+			if (!equalDims(tile, outputDims)) return null;
+			return Views.zeroMin(tile);
+		}
+		// a single value extended to the output size, no memory per voxel
+		final long[] ones = new long[outputDims.length];
+		Arrays.fill(ones, 1);
+		final RandomAccessibleInterval<FloatType> constant = Views.interval(Views
+			.extendValue(ArrayImgs.floats(new float[] { fillValue }, ones),
+				new FloatType(fillValue)), new FinalInterval(outputDims));
+		final T type = Util.getTypeFromInterval(tile).createVariable();
+		return Converters.convert(constant, (in, out) -> out.setReal(in.get()),
+			type);
+	}
+
+	private static boolean equalDims(final RandomAccessibleInterval<?> tile,
+		final long[] dims)
+	{
+		if (tile.numDimensions() != dims.length) return false;
+		for (int d = 0; d < dims.length; d++) {
+			if (tile.dimension(d) != dims[d]) return false;
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Keeps track of the regions of an input image whose tiles were already
+ * processed and of the output image the results were written into. It is
+ * shared between consecutive runs on the same image, e.g. when the image gets
+ * tiled again after running out of memory, so that only the missing regions
+ * have to be processed again.
+ */
+public class CompletedTiles {
+
+	/**
+	 * Gets notified when a tile result was written into the output image.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param region the completed region of the input image
+		 * @param output the output image
+		 * @param destination the part of the output image which was written
+		 */
+		void tileCompleted(Interval region, Img<FloatType> output,
+			Interval destination);
+	}
+
+	// in coordinates of the input image
+	private final List<Interval> regions = new ArrayList<>();
+	private Img<FloatType> output = null;
+	private Listener listener = null;
+
+	public synchronized void add(final Interval region) {
+		if (!Intervals.isEmpty(region)) regions.add(new FinalInterval(region));
+	}
+
+	/**
+	 * Adds a region whose result was written to the given destination in the
+	 * output image, and notifies the listener.
+	 */
+	public synchronized void add(final Interval region,
+		final Interval destination)
+	{
+		add(region);
+		if (listener != null) listener.tileCompleted(region, output, destination);
+	}
+
+	public synchronized void setListener(final Listener listener) {
+		this.listener = listener;
+	}
+
+	public synchronized boolean isEmpty() {
+		return regions.isEmpty();
+	}
+
+	/**
+	 * @return true if every pixel of the given region is part of a completed
+	 *         region
+	 */
+	public synchronized boolean contains(final Interval region) {
+		if (Intervals.isEmpty(region)) return true;
+		// split the region along the borders of the completed regions, the
+		// resulting cells are either completely inside of a completed region or
+		// completely outside of it
+		final int n = region.numDimensions();
+		final long[][] borders = new long[n][];
+		for (int d = 0; d < n; d++) {
+			final TreeSet<Long> dimBorders = new TreeSet<>();
+			dimBorders.add(region.min(d));
+			for (final Interval completed : regions) {
+				addBorder(dimBorders, completed.min(d), region, d);
+				addBorder(dimBorders, completed.max(d) + 1, region, d);
+			}
+			borders[d] = dimBorders.stream().mapToLong(Long::longValue).toArray();
+		}
+		final int[] cell = new int[n];
+		final long[] position = new long[n];
+		while (true) {
+			for (int d = 0; d < n; d++) {
+				position[d] = borders[d][cell[d]];
+			}
+			if (!isCompleted(position)) return false;
+			int d = 0;
+			while (d < n && ++cell[d] == borders[d].length) {
+				cell[d++] = 0;
+			}
+			if (d == n) return true;
+		}
+	}
+
+	private static void addBorder(final TreeSet<Long> borders, final long border,
+		final Interval region, final int d)
+	{
+		if (border > region.min(d) && border <= region.max(d)) borders.add(border);
+	}
+
+	private boolean isCompleted(final long[] position) {
+		for (final Interval completed : regions) {
+			boolean inside = true;
+			for (int d = 0; d < position.length && inside; d++) {
+				inside = position[d] >= completed.min(d) && position[d] <= completed
+					.max(d);
+			}
+			if (inside) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the output image the completed tiles were written into, or null
+	 */
+	public synchronized Img<FloatType> getOutput() {
+		return output;
+	}
+
+	public synchronized void setOutput(final Img<FloatType> output) {
+		this.output = output;
+	}
+
+}
@@ -39,6 +39,7 @@ import org.csbdeep.util.DatasetHelper;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
 import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.list.ListImg;
 import net.imglib2.type.numeric.RealType;
@@ -111,7 +112,34 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 	}
 
-	private void computeBatching(RandomAccessibleInterval<T> input, long[] tiling,
+	/**
+	 * Computes the size of a single tile including its padding the same way
+	 * {@link #preprocess} does, but without creating any views. This is used to
+	 * estimate the memory needed for a tiling before running the network.
+	 */
+	public long[] getPaddedTileSize(Interval input, TilingAction[] tilingActions) {
+		this.tilingActions = tilingActions;
+		long[] tiling = new long[input.numDimensions()];
+		Arrays.fill(tiling, 1);
+		computeTiling(input, tiling, tilingActions);
+		tilesNum = (int) arrayProduct(tiling);
+		long[] padding = getPadding(tiling);
+		computeBatching(input, tiling, tilingActions);
+		long[] tileSize = Intervals.dimensionsAsLongArray(input);
+		for (int i = 0; i < tileSize.length; i++) {
+			if (tilingActions[i] == TilingAction.TILE_WITHOUT_PADDING) {
+				tileSize[i] = getTileSize(tileSize[i], tiling[i], batchSize) * tiling[i];
+			}
+			if (tilingActions[i] == TilingAction.TILE_WITH_PADDING
+			|| tilingActions[i] == TilingAction.TILE_WITHOUT_PADDING) {
+				tileSize[i] = getTileSize(tileSize[i], tiling[i], blockMultiple) * tiling[i];
+			}
+			tileSize[i] = tileSize[i] / tiling[i] + 2 * padding[i];
+		}
+		return tileSize;
+	}
+
+	private void computeBatching(Interval input, long[] tiling,
 		TilingAction[] tilingActions)
 	{
 
@@ -144,7 +172,7 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		return rtn;
 	}
 
-	protected long[] computeTiling(RandomAccessibleInterval<T> input,
+	protected long[] computeTiling(Interval input,
 		long[] tiling, TilingAction[] tilingActions)
 	{
 		int currentTiles = 1;
@@ -177,8 +205,12 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		}
 	}
 
-	private long getTileSize(RandomAccessibleInterval<T> dataset, int dimension, long[] tiling, int tileMultiple) {
-		return (long) (Math.ceil(dataset.dimension(dimension) / tiling[dimension] / (double) tileMultiple) * tileMultiple);
+	private long getTileSize(Interval dataset, int dimension, long[] tiling, int tileMultiple) {
+		return getTileSize(dataset.dimension(dimension), tiling[dimension], tileMultiple);
+	}
+
+	private static long getTileSize(long size, long tiles, int tileMultiple) {
+		return (long) (Math.ceil(size / tiles / (double) tileMultiple) * tileMultiple);
 	}
 
 	protected long[] getPadding(long[] tiling) {
@@ -236,6 +268,11 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 
 		parent.log("POSTPROCESSING");
 
+		if (results.getMergedOutput() != null) {
+			parent.log("Tiles were already written into the output image");
+			return results.getMergedOutput();
+		}
+
 		List<RandomAccessibleInterval<T>> resultData = results.getProcessedTiles();
 
 		if (resultData != null && resultData.size() > 0) {
@@ -257,9 +294,11 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 					}
 				}
 			}
-			for (int i = 0; i < resultData.size(); i++) {
-				resultData.set(i, removePadding(resultData.get(i), results.getOverlapComplete(),
-					results.getOriginalAxes(), axisTypes));
+			if (!results.isPaddingRemoved()) {
+				for (int i = 0; i < resultData.size(); i++) {
+					resultData.set(i, removePadding(resultData.get(i), results.getOverlapComplete(),
+						results.getOriginalAxes(), axisTypes));
+				}
 			}
 
 			// TODO log padding / test padding
@@ -292,7 +331,8 @@ public class DefaultTiling<T extends RealType<T>> implements Tiling<T> {
 		return tilesNum;
 	}
 
-	protected RandomAccessibleInterval<T> removePadding(
+	@Override
+	public RandomAccessibleInterval<T> removePadding(
 		RandomAccessibleInterval<T> result, long[] padding, AxisType[] oldAxes,
 		AxisType[] newAxes)
 	{
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Writes each tile into its own raw float file and returns a memory mapped
+ * image of the file. The tile files form a chunked on-disk container of the
+ * output, the operating system decides which parts of it are kept in memory.
+ */
+public class DiskOutputSink implements OutputSink<FloatType> {
+
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private final File directory;
+	private final List<File> files = new ArrayList<>();
+	private Thread cleanup;
+
+	/**
+	 * Stores the tiles in a temporary directory. It is deleted by
+	 * {@link #dispose()} or, if the sink is never disposed, when the JVM exits.
+	 */
+	public DiskOutputSink() throws IOException {
+		this(Files.createTempDirectory("csbdeep-output").toFile());
+		// one hook per sink instead of one File.deleteOnExit entry per tile,
+		// removed again on dispose
+		cleanup = new Thread(this::deleteFiles);
+		Runtime.getRuntime().addShutdownHook(cleanup);
+	}
+
+	public DiskOutputSink(final File directory) {
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public synchronized RandomAccessibleInterval<FloatType> store(
+		final RandomAccessibleInterval<FloatType> tile)
+	{
+		final long numPixels = Intervals.numElements(tile);
+		if (numPixels > Integer.MAX_VALUE / Float.BYTES) {
+			throw new IllegalArgumentException("Tile too large to be stored: " +
+				numPixels + " pixels");
+		}
+		try {
+			if (!directory.exists()) Files.createDirectories(directory.toPath());
+			final File file = new File(directory, "tile_" + files.size() + ".raw");
+			files.add(file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					FileChannel channel = raf.getChannel())
+			{
+				write(tile, channel);
+				final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+					0, numPixels * Float.BYTES).order(ByteOrder.nativeOrder());
+				return wrap(buffer.asFloatBuffer(), Intervals.dimensionsAsLongArray(
+					tile));
+			}
+		}
+		catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void write(final RandomAccessibleInterval<FloatType> tile,
+		final FileChannel channel) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE)
+			.order(ByteOrder.nativeOrder());
+		final Cursor<FloatType> cursor = Views.flatIterable(tile).cursor();
+		while (cursor.hasNext()) {
+			if (buffer.remaining() < Float.BYTES) flush(buffer, channel);
+			buffer.putFloat(cursor.next().get());
+		}
+		flush(buffer, channel);
+	}
+
+	private static void flush(final ByteBuffer buffer, final FileChannel channel)
+		throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static ArrayImg<FloatType, FloatBufferAccess> wrap(
+		final FloatBuffer buffer, final long[] dims)
+	{
+		final ArrayImg<FloatType, FloatBufferAccess> img = new ArrayImg<>(
+			new FloatBufferAccess(buffer), dims, new Fraction());
+		img.setLinkedType(new FloatType(img));
+		return img;
+	}
+
+	@Override
+	public RandomAccessibleInterval<FloatType> getOutput() {
+		return null;
+	}
+
+	@Override
+	public synchronized void dispose() {
+		deleteFiles();
+		if (cleanup != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(cleanup);
+			}
+			catch (final IllegalStateException e) {
+				// the JVM is shutting down, the hook deletes the files anyway
+			}
+			cleanup = null;
+		}
+	}
+
+	private synchronized void deleteFiles() {
+		files.forEach(File::delete);
+		files.clear();
+		directory.delete();
+	}
+
+	private static class FloatBufferAccess implements FloatAccess {
+
+		private final FloatBuffer buffer;
+
+		FloatBufferAccess(final FloatBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public float getValue(final int index) {
+			return buffer.get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			buffer.put(index, value);
+		}
+	}
+
+}
@@ -0,0 +1,304 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import net.imglib2.Interval;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Estimates how much memory running a network on a tiled image needs and
+ * chooses the number of tiles, the batch size and the number of tiles per run
+ * such that the estimate fits into the available memory. This avoids running
+ * into {@link OutOfMemoryError}s which then have to be handled by retrying with
+ * smaller tiles.
+ * <p>
+ * The estimate is rough on purpose. Java heap is needed for the input buffers
+ * and output arrays of the tiles traveling through the pipeline and, if the
+ * output is kept in memory, for all output tiles. Native memory is needed for
+ * the tensors and for the activations of the network, which are approximated
+ * as a multiple of the input tile size.
+ * </p>
+ */
+public class MemoryPlanner {
+
+	public static final double DEFAULT_SAFETY_FACTOR = 0.7;
+	public static final int DEFAULT_ACTIVATION_FACTOR = 64;
+	public static final int DEFAULT_TILES_IN_FLIGHT = 4;
+
+	private static final String MEMINFO = "/proc/meminfo";
+
+	private final long availableHeap;
+	private final long availableNative;
+	private double safetyFactor = DEFAULT_SAFETY_FACTOR;
+	private int activationFactor = DEFAULT_ACTIVATION_FACTOR;
+	private int tilesInFlight = DEFAULT_TILES_IN_FLIGHT;
+	private int concurrentRuns = 1;
+	private double outputRatio = 1;
+	private boolean outputInMemory = true;
+
+	public static class Plan {
+
+		private final int nTiles;
+		private final int batchSize;
+		private final int tilesPerRun;
+		private final long heapBytes;
+		private final long nativeBytes;
+		private final boolean fits;
+
+		Plan(final int nTiles, final int batchSize, final int tilesPerRun,
+			final long heapBytes, final long nativeBytes, final boolean fits)
+		{
+			this.nTiles = nTiles;
+			this.batchSize = batchSize;
+			this.tilesPerRun = tilesPerRun;
+			this.heapBytes = heapBytes;
+			this.nativeBytes = nativeBytes;
+			this.fits = fits;
+		}
+
+		public int getNTiles() {
+			return nTiles;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public int getTilesPerRun() {
+			return tilesPerRun;
+		}
+
+		public long getHeapBytes() {
+			return heapBytes;
+		}
+
+		public long getNativeBytes() {
+			return nativeBytes;
+		}
+
+		/**
+		 * @return false if even the smallest possible tiling is estimated to need
+		 *         more memory than available
+		 */
+		public boolean fits() {
+			return fits;
+		}
+
+		@Override
+		public String toString() {
+			return nTiles + " tile(s), batch size " + batchSize + ", " +
+				tilesPerRun + " tile(s) per run (estimated " + toMB(heapBytes) +
+				" MB heap, " + toMB(nativeBytes) + " MB native memory)";
+		}
+
+		private static long toMB(final long bytes) {
+			return bytes / (1024 * 1024);
+		}
+	}
+
+	/**
+	 * Creates a planner for the memory currently available to this JVM.
+	 */
+	public MemoryPlanner() {
+		this(getAvailableHeap(), getAvailableNative());
+	}
+
+	public MemoryPlanner(final long availableHeap, final long availableNative) {
+		this.availableHeap = availableHeap;
+		this.availableNative = availableNative;
+	}
+
+	/**
+	 * @return the heap which can still be allocated by this JVM
+	 */
+	public static long getAvailableHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime
+			.freeMemory());
+	}
+
+	/**
+	 * @return the memory available for new allocations without swapping, which
+	 *         unlike the free memory includes the page cache. If the operating
+	 *         system does not report it, the total physical memory, or
+	 *         {@link Long#MAX_VALUE} if that cannot be determined either.
+	 */
+	public static long getAvailableNative() {
+		final long available = readMemAvailable(new File(MEMINFO));
+		if (available > 0) return available;
+		final OperatingSystemMXBean os = ManagementFactory
+			.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os)
+				.getTotalPhysicalMemorySize();
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return the MemAvailable entry of the given Linux meminfo file in bytes,
+	 *         -1 if the file cannot be read or has no such entry
+	 */
+	static long readMemAvailable(final File meminfo) {
+		if (!meminfo.canRead()) return -1;
+		try {
+			for (final String line : Files.readAllLines(meminfo.toPath(),
+				StandardCharsets.US_ASCII))
+			{
+				if (!line.startsWith("MemAvailable:")) continue;
+				final String[] parts = line.substring(13).trim().split("\\s+");
+				return Long.parseLong(parts[0]) * 1024;
+			}
+		}
+		catch (final IOException | NumberFormatException e) {
+			return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Set which fraction of the available memory the plan may use.
+	 */
+	public void setSafetyFactor(final double safetyFactor) {
+		this.safetyFactor = safetyFactor;
+	}
+
+	/**
+	 * Set how many times the input tile size the network needs for its
+	 * intermediate results.
+	 */
+	public void setActivationFactor(final int activationFactor) {
+		this.activationFactor = Math.max(1, activationFactor);
+	}
+
+	/**
+	 * Set how many groups of tiles are processed by the pipeline at the same
+	 * time.
+	 */
+	public void setTilesInFlight(final int tilesInFlight) {
+		this.tilesInFlight = Math.max(1, tilesInFlight);
+	}
+
+	/**
+	 * Set how many model runs happen at the same time, each needing memory for
+	 * its activations.
+	 */
+	public void setConcurrentRuns(final int concurrentRuns) {
+		this.concurrentRuns = Math.max(1, concurrentRuns);
+	}
+
+	/**
+	 * Set the size of an output tile relative to the size of an input tile,
+	 * e.g. 2 if the network produces two channels from one.
+	 */
+	public void setOutputRatio(final double outputRatio) {
+		this.outputRatio = outputRatio;
+	}
+
+	/**
+	 * Set whether all output tiles are kept in memory until they get merged.
+	 */
+	public void setOutputInMemory(final boolean outputInMemory) {
+		this.outputInMemory = outputInMemory;
+	}
+
+	/**
+	 * Finds the first tiling which fits into memory, starting at the given
+	 * parameters and refining them in the same order as the handling of
+	 * {@link OutOfMemoryError}s: first fewer tiles per run, then smaller
+	 * batches, then more tiles.
+	 *
+	 * @return the plan which fits or, if there is none, the finest tiling
+	 */
+	public Plan plan(final Interval input, final Tiling.TilingAction[] actions,
+		int nTiles, int batchSize, int tilesPerRun, final int blockMultiple,
+		final int overlap)
+	{
+		Plan plan = estimate(input, actions, nTiles, batchSize, tilesPerRun,
+			blockMultiple, overlap);
+		while (!plan.fits()) {
+			if (tilesPerRun > 1) {
+				tilesPerRun /= 2;
+			}
+			else if (batchSize > 1) {
+				batchSize /= 2;
+			}
+			else {
+				nTiles = Math.max(nTiles, plan.getNTiles()) * 2;
+			}
+			final Plan next = estimate(input, actions, nTiles, batchSize,
+				tilesPerRun, blockMultiple, overlap);
+			if (next.getNTiles() == plan.getNTiles() && next
+				.getBatchSize() == plan.getBatchSize() && next
+					.getTilesPerRun() == plan.getTilesPerRun())
+			{
+				// the tiling cannot be refined any further
+				break;
+			}
+			plan = next;
+		}
+		return plan;
+	}
+
+	/**
+	 * Estimates the memory needed for running the network with the given
+	 * tiling parameters.
+	 */
+	public Plan estimate(final Interval input,
+		final Tiling.TilingAction[] actions, final int nTiles, final int batchSize,
+		final int tilesPerRun, final int blockMultiple, final int overlap)
+	{
+		final DefaultTiling<FloatType> tiling = new DefaultTiling<>(nTiles, batchSize,
+			blockMultiple, overlap);
+		final long[] tileSize = tiling.getPaddedTileSize(input, actions);
+		final long tiles = tiling.getTilesNum();
+		final long inputBytes = DefaultTiling.arrayProduct(tileSize) * Float.BYTES;
+		final long outputBytes = (long) Math.ceil(inputBytes * outputRatio);
+		final long inFlight = Math.min(tiles, (long) tilesInFlight * tilesPerRun);
+
+		long heap = inFlight * (inputBytes + outputBytes);
+		if (outputInMemory) heap += tiles * outputBytes;
+		final long nativeBytes = inFlight * (inputBytes + outputBytes) +
+			(long) concurrentRuns * tilesPerRun * inputBytes * activationFactor;
+
+		final boolean fits = heap <= availableHeap * safetyFactor &&
+			nativeBytes <= availableNative * safetyFactor;
+		return new Plan((int) tiles, tiling.batchSize, tilesPerRun, heap,
+			nativeBytes, fits);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Receives the results of single tiles as soon as they are computed, with the
+ * padding already removed. This allows moving tile results out of memory
+ * before the tiles are merged into the output image.
+ */
+public interface OutputSink<T extends RealType<T>> {
+
+	/**
+	 * Stores the tile and returns a view of the stored data which replaces the
+	 * tile in the list of processed tiles. The given tile is not referenced by
+	 * the sink afterwards.
+	 */
+	RandomAccessibleInterval<T> store(RandomAccessibleInterval<T> tile);
+
+	/**
+	 * @return the merged output if the sink assembles it while storing the
+	 *         tiles, otherwise null and the stored tiles get merged afterwards
+	 */
+	RandomAccessibleInterval<T> getOutput();
+
+	/**
+	 * @return true if the result of the tile with the given index in the tiled
+	 *         view is already part of the output, e.g. from an earlier run, and
+	 *         the tile does not need to be processed
+	 */
+	default boolean isCompleted(final int tileIndex) {
+		return false;
+	}
+
+	/**
+	 * Deletes everything stored by this sink. Views returned by
+	 * {@link #store(RandomAccessibleInterval)} must not be used afterwards.
+	 */
+	void dispose();
+
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.util.Map;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Allocates the output image with the first tile and copies every tile
+ * straight into its place in the output. Parts of the tiles outside of the
+ * original image size are skipped. The tiles have to be stored in the order
+ * of the tiled view. Tiles whose region is part of the given
+ * {@link CompletedTiles} are not processed again and are skipped when storing.
+ */
+public class PreallocatedOutputSink implements OutputSink<FloatType> {
+
+	private final AdvancedTiledView<?> tiledView;
+	private final AxisType[] outputAxes;
+	// the dimension of the tiled view for each output dimension, or -1
+	private final int[] gridDims;
+	private final CompletedTiles completed;
+	private Img<FloatType> output = null;
+	private int index = 0;
+
+	public PreallocatedOutputSink(final AdvancedTiledView<?> tiledView,
+		final AxisType[] outputAxes)
+	{
+		this(tiledView, outputAxes, new CompletedTiles());
+	}
+
+	/**
+	 * @param completed regions which were already processed; the output image
+	 *          is reused from there if it exists and completed tiles are
+	 *          recorded there
+	 */
+	public PreallocatedOutputSink(final AdvancedTiledView<?> tiledView,
+		final AxisType[] outputAxes, final CompletedTiles completed)
+	{
+		this.tiledView = tiledView;
+		this.outputAxes = outputAxes;
+		this.completed = completed;
+		gridDims = new int[outputAxes.length];
+		for (int i = 0; i < outputAxes.length; i++) {
+			gridDims[i] = -1;
+			final AxisType[] originalAxes = tiledView.getOriginalAxes();
+			for (int j = 0; j < originalAxes.length; j++) {
+				if (originalAxes[j].equals(outputAxes[i])) {
+					if (j < tiledView.numDimensions()) gridDims[i] = j;
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public synchronized RandomAccessibleInterval<FloatType> store(
+		final RandomAccessibleInterval<FloatType> tile)
+	{
+		if (output == null) {
+			output = completed.getOutput();
+			if (output == null) {
+				output = allocate(tile);
+				completed.setOutput(output);
+			}
+		}
+		while (isCompleted(index)) {
+			index++;
+		}
+		final long[] gridPosition = getGridPosition(index++);
+		final long[] min = new long[tile.numDimensions()];
+		final long[] max = new long[tile.numDimensions()];
+		for (int i = 0; i < min.length; i++) {
+			final long position = gridDims[i] < 0 ? 0 : gridPosition[gridDims[i]];
+			min[i] = position * tile.dimension(i);
+			max[i] = min[i] + tile.dimension(i) - 1;
+		}
+		final Interval destination = Intervals.intersect(new FinalInterval(min,
+			max), output);
+		if (!Intervals.isEmpty(destination)) {
+			copy(Views.interval(Views.translate(Views.zeroMin(tile), min),
+				destination), Views.interval(output, destination));
+		}
+		completed.add(getInputRegion(gridPosition), destination);
+		return Views.zeroMin(Views.interval(Views.extendZero(output), min, max));
+	}
+
+	@Override
+	public boolean isCompleted(final int tileIndex) {
+		return completed.contains(getInputRegion(getGridPosition(tileIndex)));
+	}
+
+	private long[] getGridPosition(final int tileIndex) {
+		final long[] gridPosition = new long[tiledView.numDimensions()];
+		IntervalIndexer.indexToPosition(tileIndex, Intervals
+			.dimensionsAsLongArray(tiledView), gridPosition);
+		return gridPosition;
+	}
+
+	/**
+	 * @return the part of the original input image covered by the tile at the
+	 *         given grid position, without padding
+	 */
+	private Interval getInputRegion(final long[] gridPosition) {
+		final long[] blockSize = tiledView.getBlockSize();
+		final AxisType[] originalAxes = tiledView.getOriginalAxes();
+		final long[] min = new long[gridPosition.length];
+		final long[] max = new long[gridPosition.length];
+		for (int i = 0; i < min.length; i++) {
+			final Long originalSize = tiledView.getOriginalDims().get(
+				originalAxes[i]);
+			final long size = originalSize != null ? originalSize : tiledView
+				.getSource().dimension(i);
+			min[i] = gridPosition[i] * blockSize[i];
+			max[i] = Math.min(min[i] + blockSize[i], size) - 1;
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private Img<FloatType> allocate(final RandomAccessibleInterval<FloatType> tile) {
+		final Map<AxisType, Long> originalDims = tiledView.getOriginalDims();
+		final long[] dims = new long[tile.numDimensions()];
+		for (int i = 0; i < dims.length; i++) {
+			final AxisType axis = outputAxes[i];
+			final Long originalSize = originalDims.get(axis);
+			if (axis != Axes.CHANNEL && originalSize != null) {
+				dims[i] = originalSize;
+			}
+			else {
+				final long gridSize = gridDims[i] < 0 ? 1 : tiledView.dimension(
+					gridDims[i]);
+				dims[i] = gridSize * tile.dimension(i);
+			}
+		}
+		return Util.getArrayOrCellImgFactory(new FinalInterval(dims),
+			new FloatType()).create(dims);
+	}
+
+	private static void copy(final RandomAccessibleInterval<FloatType> source,
+		final RandomAccessibleInterval<FloatType> target)
+	{
+		final Cursor<FloatType> in = Views.flatIterable(source).cursor();
+		final Cursor<FloatType> out = Views.flatIterable(target).cursor();
+		while (out.hasNext()) {
+			out.next().set(in.next());
+		}
+	}
+
+	@Override
+	public synchronized RandomAccessibleInterval<FloatType> getOutput() {
+		return output;
+	}
+
+	@Override
+	public void dispose() {
+		output = null;
+	}
+
+}
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import net.imagej.Dataset;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * A region of the input which is processed instead of the whole image. The
+ * region is given in X, Y and optionally Z, all other axes are processed
+ * completely. To get the same result as for the whole image, the region is
+ * expanded by a halo (usually the overlap between the tiles) which is cropped
+ * from the result again.
+ */
+public class RegionOfInterest {
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	private final AxisType[] axes;
+	private final Interval region;
+	private final Interval processedRegion;
+
+	public RegionOfInterest(final AxisType[] axes, final Interval region,
+		final Interval processedRegion)
+	{
+		this.axes = axes;
+		this.region = region;
+		this.processedRegion = processedRegion;
+	}
+
+	/**
+	 * @param text "x,y,width,height" or "x,y,z,width,height,depth"
+	 * @param halo number of pixels added to each side of the region in the
+	 *          processed region
+	 * @return the region or null if the text is empty
+	 * @throws IllegalArgumentException if the text is not a valid region of the
+	 *           input
+	 */
+	public static RegionOfInterest parse(final String text, final Dataset input,
+		final long halo)
+	{
+		final AxisType[] axes = new AxisType[input.numDimensions()];
+		for (int i = 0; i < axes.length; i++) {
+			axes[i] = input.axis(i).type();
+		}
+		return parse(text, input, axes, halo);
+	}
+
+	public static RegionOfInterest parse(final String text, final Interval image,
+		final AxisType[] axes, final long halo)
+	{
+		if (text == null || text.trim().isEmpty()) return null;
+		final String[] parts = text.split(",");
+		if (parts.length != 4 && parts.length != 6) {
+			throw new IllegalArgumentException("Region of interest has to be " +
+				"x,y,width,height or x,y,z,width,height,depth: " + text);
+		}
+		final int n = parts.length / 2;
+		final long[] values = new long[parts.length];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				values[i] = Long.parseLong(parts[i].trim());
+			}
+		}
+		catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid region of interest: " +
+				text);
+		}
+		final long[] min = Intervals.minAsLongArray(image);
+		final long[] max = Intervals.maxAsLongArray(image);
+		for (int j = 0; j < n; j++) {
+			final int d = indexOf(axes, AXES[j]);
+			if (d < 0) {
+				throw new IllegalArgumentException("Region of interest is set in " +
+					AXES[j].getLabel() + ", but the input has no such axis");
+			}
+			final long size = values[n + j];
+			if (size < 1) {
+				throw new IllegalArgumentException("Region of interest is empty: " +
+					text);
+			}
+			min[d] = Math.max(image.min(d), values[j]);
+			max[d] = Math.min(image.max(d), values[j] + size - 1);
+			if (min[d] > max[d]) {
+				throw new IllegalArgumentException(
+					"Region of interest is outside of the input: " + text);
+			}
+		}
+		final Interval region = new FinalInterval(min, max);
+		final long[] haloMin = min.clone();
+		final long[] haloMax = max.clone();
+		for (final AxisType axis : AXES) {
+			final int d = indexOf(axes, axis);
+			if (d < 0) continue;
+			haloMin[d] = Math.max(image.min(d), min[d] - halo);
+			haloMax[d] = Math.min(image.max(d), max[d] + halo);
+		}
+		return new RegionOfInterest(axes, region, new FinalInterval(haloMin,
+			haloMax));
+	}
+
+	/**
+	 * @return the region of the input in which the result is returned
+	 */
+	public Interval getRegion() {
+		return region;
+	}
+
+	/**
+	 * @return the region of the input which is processed, the region of interest
+	 *         plus the halo
+	 */
+	public Interval getProcessedRegion() {
+		return processedRegion;
+	}
+
+	/**
+	 * Crops the result of the processed region to the region of interest. The
+	 * axes of the result are matched to the input by their type, if the result
+	 * is scaled in an axis, the region is scaled accordingly. Axes which are not
+	 * part of the input are kept completely.
+	 */
+	public <T> RandomAccessibleInterval<T> crop(
+		final RandomAccessibleInterval<T> result, final AxisType[] resultAxes)
+	{
+		final long[] min = Intervals.minAsLongArray(result);
+		final long[] max = Intervals.maxAsLongArray(result);
+		for (int d = 0; d < resultAxes.length && d < min.length; d++) {
+			final int i = indexOf(axes, resultAxes[d]);
+			if (i < 0 || indexOf(AXES, resultAxes[d]) < 0) continue;
+			final double scale = (double) result.dimension(d) / processedRegion
+				.dimension(i);
+			final long offset = Math.round((region.min(i) - processedRegion.min(i)) *
+				scale);
+			final long size = Math.max(1, Math.round(region.dimension(i) * scale));
+			min[d] = Math.min(result.max(d), result.min(d) + offset);
+			max[d] = Math.min(result.max(d), min[d] + size - 1);
+		}
+		return Views.zeroMin(Views.interval(result, min, max));
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder res = new StringBuilder();
+		for (int d = 0; d < region.numDimensions(); d++) {
+			if (d > 0) res.append(", ");
+			res.append(axes[d].getLabel()).append(" ").append(region.min(d)).append(
+				"-").append(region.max(d));
+		}
+		return res.toString();
+	}
+
+	private static int indexOf(final AxisType[] axes, final AxisType axis) {
+		for (int i = 0; i < axes.length; i++) {
+			if (axes[i] == axis) return i;
+		}
+		return -1;
+	}
+
+}
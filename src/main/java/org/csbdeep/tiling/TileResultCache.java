@@ -0,0 +1,246 @@
+/*-
+ * #%L
+ * CSBDeep: CNNs for image restoration of fluorescence microscopy.
+ * %%
+ * Copyright (C) 2017 - 2018 Deborah Schmidt, Florian Jug, Benjamin Wilhelm
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.csbdeep.tiling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.codec.binary.Hex;
+import org.csbdeep.network.worker.FloatTensor;
+import org.scijava.log.Logger;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Stores the model results of single tiles on disk so that they don't have to
+ * be recomputed when the same model runs on the same tile again, e.g. after
+ * the input was cropped or a single time point changed. Entries are keyed by
+ * a hash of the model and normalization parameters and the content of the
+ * (normalized) input tile. The least recently used entries are removed if the
+ * cache holds more than the maximum number of bytes.
+ */
+public class TileResultCache {
+
+	public static final String DIRECTORY_NAME = "tiles";
+	public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+	private static final int HASH_BUFFER_SIZE = 1 << 16;
+	private static final String SUFFIX = ".bin";
+
+	private final File directory;
+	private final long maxBytes;
+	private Logger logger;
+
+	// size of all entries in bytes, counted from the directory once and then
+	// updated with every change. Entries written by other processes are
+	// counted when the limit is reached and the directory is listed again.
+	private long size = -1;
+
+	/**
+	 * @param modelsDirectory the directory where the models are cached, the
+	 *          tiles are stored in the subdirectory {@link #DIRECTORY_NAME}
+	 */
+	public TileResultCache(final File modelsDirectory) {
+		this(modelsDirectory, DEFAULT_MAX_BYTES);
+	}
+
+	public TileResultCache(final File modelsDirectory, final long maxBytes) {
+		this.directory = new File(modelsDirectory, DIRECTORY_NAME);
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Set where failures to write the cache are reported.
+	 */
+	public void setLogger(final Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Computes the key of the result of the given tile.
+	 *
+	 * @param prefix identifies the model and the normalization parameters
+	 */
+	public <T extends RealType<T>> String getKey(final String prefix,
+		final RandomAccessibleInterval<T> tile)
+	{
+		final MessageDigest digest = createDigest();
+		digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+		final ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+		for (int d = 0; d < tile.numDimensions(); d++) {
+			buffer.putLong(tile.dimension(d));
+		}
+		// the model reads the float values, so hash these
+		final Cursor<T> cursor = Views.flatIterable(tile).cursor();
+		while (cursor.hasNext()) {
+			if (buffer.remaining() < 4) {
+				digest.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			buffer.putFloat(cursor.next().getRealFloat());
+		}
+		digest.update(buffer.array(), 0, buffer.position());
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * @return the cached result or null if there is no valid entry for the key
+	 */
+	public Img<FloatType> get(final String key) {
+		final File file = getFile(key);
+		if (!file.exists()) return null;
+		final FloatTensor entry;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+			new FileInputStream(file))))
+		{
+			entry = FloatTensor.read(in);
+		}
+		catch (final IOException | IllegalArgumentException e) {
+			final long length = file.length();
+			if (file.delete()) changed(-length);
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return ArrayImgs.floats(entry.getData(), entry.getShape());
+	}
+
+	public <T extends RealType<T>> void put(final String key,
+		final RandomAccessibleInterval<T> result)
+	{
+		if (!directory.exists() && !directory.mkdirs()) return;
+		final float[] data = new float[(int) Intervals.numElements(result)];
+		int i = 0;
+		for (final T value : Views.flatIterable(result)) {
+			data[i++] = value.getRealFloat();
+		}
+		final FloatTensor entry = new FloatTensor(Intervals.dimensionsAsLongArray(
+			result), data);
+		File tmp = null;
+		try {
+			// write to a temporary file first so that no other run reads a
+			// partial entry
+			tmp = File.createTempFile(key, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp))))
+			{
+				entry.write(out);
+			}
+			final File file = getFile(key);
+			final long replaced = file.length();
+			Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+			changed(file.length() - replaced);
+		}
+		catch (final IOException e) {
+			if (logger != null) logger.warn("Could not cache tile result: " + e
+				.getMessage());
+		}
+		finally {
+			if (tmp != null) tmp.delete();
+		}
+	}
+
+	private synchronized void changed(final long bytes) {
+		if (size < 0) {
+			// the first count already includes the change
+			size = 0;
+			for (final File file : listEntries()) {
+				size += file.length();
+			}
+		}
+		else {
+			size += bytes;
+		}
+		if (size > maxBytes) evict();
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache fits into the
+	 * maximum number of bytes.
+	 */
+	private void evict() {
+		final File[] files = listEntries();
+		size = 0;
+		for (final File file : files) {
+			size += file.length();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length && size > maxBytes; i++) {
+			final long length = files[i].length();
+			if (files[i].delete()) size -= length;
+		}
+	}
+
+	private File[] listEntries() {
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(
+			SUFFIX));
+		return files == null ? new File[0] : files;
+	}
+
+	private File getFile(final String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
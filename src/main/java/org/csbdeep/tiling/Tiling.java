@@ -49,4 +49,15 @@ public interface Tiling<T extends RealType<T>> {
 
 	int getTilesNum();
 
+	/**
+	 * Removes the padding of a processed tile.
+	 *
+	 * @param result the processed tile
+	 * @param padding the padding of the tile in the input axes
+	 * @param oldAxes the input axes
+	 * @param newAxes the axes of the processed tile
+	 */
+	RandomAccessibleInterval<T> removePadding(RandomAccessibleInterval<T> result,
+		long[] padding, AxisType[] oldAxes, AxisType[] newAxes);
+
 }
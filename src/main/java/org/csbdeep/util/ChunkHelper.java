@@ -0,0 +1,121 @@
+
+package org.csbdeep.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class ChunkHelper {
+
+	/**
+	 * Threads shared by all calls, so that the threads are not started again
+	 * for every image.
+	 */
+	private static class Pool {
+
+		private static final ExecutorService INSTANCE = Executors
+			.newFixedThreadPool(numThreads(), ChunkThread::new);
+	}
+
+	private static class ChunkThread extends Thread {
+
+		ChunkThread(final Runnable runnable) {
+			super(runnable, "csbdeep-chunks");
+			setDaemon(true);
+		}
+	}
+
+	public static int numThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Divides the image into at most {@code numChunks} slabs along the last
+	 * non-singleton dimension, which is the slowest dimension when iterating
+	 * over most image types.
+	 */
+	public static <T> List<RandomAccessibleInterval<T>> splitAlongSlowestAxis(
+		final RandomAccessibleInterval<T> image, final int numChunks)
+	{
+		final List<RandomAccessibleInterval<T>> chunks = new ArrayList<>();
+		int axis = image.numDimensions() - 1;
+		while (axis > 0 && image.dimension(axis) == 1) {
+			axis--;
+		}
+		final long size = image.dimension(axis);
+		final long num = Math.max(1, Math.min(numChunks, size));
+		for (long i = 0; i < num; i++) {
+			final long[] min = Intervals.minAsLongArray(image);
+			final long[] max = Intervals.maxAsLongArray(image);
+			min[axis] = image.min(axis) + i * size / num;
+			max[axis] = image.min(axis) + (i + 1) * size / num - 1;
+			chunks.add(Views.interval(image, min, max));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Applies the function to all chunks of the image in parallel and returns
+	 * the results in chunk order.
+	 */
+	public static <T, R> List<R> forEachChunk(
+		final RandomAccessibleInterval<T> image,
+		final Function<RandomAccessibleInterval<T>, R> function)
+	{
+		return forEachChunk(image, numThreads(), function);
+	}
+
+	/**
+	 * Applies the function to at most {@code numChunks} chunks of the image in
+	 * parallel and returns the results in chunk order. Use this if the results
+	 * have to be independent of the number of available processors.
+	 */
+	public static <T, R> List<R> forEachChunk(
+		final RandomAccessibleInterval<T> image, final int numChunks,
+		final Function<RandomAccessibleInterval<T>, R> function)
+	{
+		final List<RandomAccessibleInterval<T>> chunks = splitAlongSlowestAxis(
+			image, numChunks);
+		final List<R> results = new ArrayList<>();
+		if (chunks.size() == 1 || Thread.currentThread() instanceof ChunkThread) {
+			// waiting for the shared threads from one of them could block them all
+			for (final RandomAccessibleInterval<T> chunk : chunks) {
+				results.add(function.apply(chunk));
+			}
+			return results;
+		}
+		final List<Future<R>> futures = new ArrayList<>();
+		try {
+			for (final RandomAccessibleInterval<T> chunk : chunks) {
+				futures.add(Pool.INSTANCE.submit(() -> function.apply(chunk)));
+			}
+			for (final Future<R> future : futures) {
+				results.add(future.get());
+			}
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing chunks",
+				e);
+		}
+		catch (final ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			// stop the remaining chunks if one failed
+			for (final Future<R> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return results;
+	}
+
+}
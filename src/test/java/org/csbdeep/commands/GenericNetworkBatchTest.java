@@ -0,0 +1,116 @@
+package org.csbdeep.commands;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class GenericNetworkBatchTest {
+
+	@Test
+	public void testPipelineIsSetUpOnce() {
+		final ImageJ ij = new ImageJ();
+		final List<Dataset> inputs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			inputs.add(ij.dataset().create(new FloatType(), new long[] { 10 + i,
+				20 }, "input" + i, new AxisType[] { Axes.X, Axes.Y }));
+		}
+
+		final CountingCommand command = new CountingCommand();
+		final GenericNetworkBatch batch = new GenericNetworkBatch() {
+
+			@Override
+			protected GenericNetwork createCommand() {
+				command.initialize();
+				return command;
+			}
+		};
+		final List<List<Dataset>> results = batch.processDatasets(inputs);
+
+		assertEquals(1, command.initializations);
+		assertEquals(3, command.runs);
+		assertEquals(1, command.disposals);
+		assertEquals(3, results.size());
+		for (int i = 0; i < inputs.size(); i++) {
+			assertEquals(1, results.get(i).size());
+			assertSame(inputs.get(i), results.get(i).get(0));
+		}
+
+		ij.context().dispose();
+	}
+
+	@Test
+	public void testFailingInputIsSkipped() {
+		final ImageJ ij = new ImageJ();
+		final List<Dataset> inputs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			inputs.add(ij.dataset().create(new FloatType(), new long[] { 10, 20 },
+				"input" + i, new AxisType[] { Axes.X, Axes.Y }));
+		}
+
+		final CountingCommand command = new CountingCommand();
+		command.failingInput = inputs.get(1);
+		final GenericNetworkBatch batch = new GenericNetworkBatch() {
+
+			@Override
+			protected GenericNetwork createCommand() {
+				command.initialize();
+				return command;
+			}
+		};
+		ij.context().inject(batch);
+		final List<List<Dataset>> results = batch.processDatasets(inputs);
+
+		assertEquals(3, command.runs);
+		assertSame(inputs.get(0), results.get(0).get(0));
+		assertNull(results.get(1));
+		assertSame(inputs.get(2), results.get(2).get(0));
+
+		ij.context().dispose();
+	}
+
+	/**
+	 * Returns the input as output and counts how often the pipeline gets set
+	 * up.
+	 */
+	private static class CountingCommand extends GenericNetwork {
+
+		int initializations = 0;
+		int runs = 0;
+		int disposals = 0;
+		Dataset failingInput;
+
+		@Override
+		public void initialize() {
+			initializations++;
+			initialized = true;
+		}
+
+		@Override
+		protected void mainThread() {
+			tryToInitialize();
+			runs++;
+			if (getInput() == failingInput) {
+				throw new IllegalStateException("Failing input");
+			}
+			output.add(getInput());
+		}
+
+		@Override
+		public void dispose() {
+			disposals++;
+			super.dispose();
+		}
+	}
+
+}
@@ -31,7 +31,9 @@ package org.csbdeep.commands;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
+import net.imagej.axis.AxisType;
 import org.scijava.ItemIO;
 import org.scijava.command.Command;
 import org.scijava.plugin.Parameter;
@@ -61,6 +63,11 @@ public class OOMThrowingNetwork extends GenericNetwork
 		public List<AdvancedTiledView> run(List input, Network network) {
 			throw new OutOfMemoryError();
 		}
+
+		@Override
+		public void setOutputSink(Function sinkFactory, Tiling tiling,
+			AxisType[] outputAxes)
+		{}
 	}
 
 	@Override
@@ -0,0 +1,139 @@
+package org.csbdeep.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.csbdeep.task.DefaultTask;
+import org.csbdeep.tasks.PseudoNetwork;
+import org.csbdeep.tasks.TestTiles;
+import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.CompletedTiles;
+import org.csbdeep.tiling.PreallocatedOutputSink;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class CheckpointTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testResumeInterruptedRun() throws Exception {
+		final File directory = folder.newFolder();
+		final Img<FloatType> input = TestTiles.createImage();
+
+		// the first run gets killed after five of twelve tiles
+		final Checkpoint checkpoint = new Checkpoint(directory);
+		assertFalse(checkpoint.open("key"));
+		checkpoint.savePlan(12, 1, 1);
+		final AtomicInteger firstRunTiles = new AtomicInteger();
+		try {
+			run(input, checkpoint.restore(0), firstRunTiles, 5);
+			fail("The first run should have been interrupted");
+		}
+		catch (final ExecutionException e) {
+			assertEquals(5, firstRunTiles.get());
+		}
+
+		// a new run on the same checkpoint only processes the remaining tiles
+		final Checkpoint resumed = new Checkpoint(directory);
+		assertTrue(resumed.open("key"));
+		assertNotNull(resumed.getPlan());
+		assertEquals(12, resumed.getPlan().getNTiles());
+		final CompletedTiles completed = resumed.restore(0);
+		assertFalse(completed.isEmpty());
+		final AtomicInteger secondRunTiles = new AtomicInteger();
+		run(input, completed, secondRunTiles, Integer.MAX_VALUE);
+		assertEquals(7, secondRunTiles.get());
+
+		final RandomAccessibleInterval<FloatType> output = completed.getOutput();
+		final Cursor<FloatType> expected = input.localizingCursor();
+		final RandomAccess<FloatType> actual = output.randomAccess();
+		while (expected.hasNext()) {
+			expected.fwd();
+			actual.setPosition(expected);
+			assertEquals(expected.get().get(), actual.get().get(), 0);
+		}
+	}
+
+	@Test
+	public void testDifferentKeyDiscardsProgress() throws Exception {
+		final File directory = folder.newFolder();
+		final Img<FloatType> input = TestTiles.createImage();
+
+		final Checkpoint checkpoint = new Checkpoint(directory);
+		checkpoint.open("key");
+		checkpoint.savePlan(12, 1, 1);
+		run(input, checkpoint.restore(0), new AtomicInteger(), Integer.MAX_VALUE);
+
+		final Checkpoint other = new Checkpoint(directory);
+		assertFalse(other.open("other key"));
+		assertNull(other.getPlan());
+		assertTrue(other.restore(0).isEmpty());
+	}
+
+	@Test
+	public void testCreateKey() {
+		assertEquals(Checkpoint.createKey("a", "b"), Checkpoint.createKey("a",
+			"b"));
+		assertFalse(Checkpoint.createKey("a", "b").equals(Checkpoint.createKey(
+			"ab")));
+	}
+
+	/**
+	 * Runs a stand-in network which returns the tiles unchanged and fails after
+	 * the given number of tiles.
+	 */
+	private static void run(final Img<FloatType> input,
+		final CompletedTiles completed, final AtomicInteger processedTiles,
+		final int maxTiles) throws ExecutionException
+	{
+		final AdvancedTiledView<FloatType> tiledView = TestTiles.createTiledView(
+			input);
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+			new DefaultTask())
+		{
+
+			@Override
+			public RandomAccessibleInterval<FloatType> execute(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				if (processedTiles.get() == maxTiles) {
+					throw new IOException("killed");
+				}
+				processedTiles.incrementAndGet();
+				return tile;
+			}
+		};
+		network.setPipelineDepth(1);
+		final PreallocatedOutputSink sink = new PreallocatedOutputSink(tiledView,
+			TestTiles.AXES, completed);
+		network.resetTileCount();
+		network.setTiledView(tiledView);
+		network.setTileResultHandler(sink::store);
+		network.setTileFilter(index -> !sink.isCompleted(index));
+		try {
+			network.call();
+		}
+		finally {
+			network.dispose();
+		}
+	}
+
+}
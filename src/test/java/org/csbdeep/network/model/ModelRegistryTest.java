@@ -0,0 +1,92 @@
+package org.csbdeep.network.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ModelRegistryTest {
+
+	private static class PseudoModel implements AutoCloseable {
+
+		boolean closed = false;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private int loadCount = 0;
+
+	private PseudoModel load() {
+		loadCount++;
+		return new PseudoModel();
+	}
+
+	@Test
+	public void testModelIsReused() throws IOException {
+		final ModelRegistry<PseudoModel> registry = new ModelRegistry<>(2);
+		final PseudoModel model = registry.acquire("a", this::load);
+		registry.release("a", model);
+		assertFalse(model.closed);
+		assertSame(model, registry.acquire("a", this::load));
+		assertEquals(1, loadCount);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedModelIsClosed() throws IOException {
+		final ModelRegistry<PseudoModel> registry = new ModelRegistry<>(2);
+		final PseudoModel a = registry.acquire("a", this::load);
+		final PseudoModel b = registry.acquire("b", this::load);
+		registry.release("a", a);
+		registry.release("b", b);
+		// use a again, b is now the least recently used model
+		registry.release("a", registry.acquire("a", this::load));
+		final PseudoModel c = registry.acquire("c", this::load);
+		assertFalse(a.closed);
+		assertTrue(b.closed);
+		assertFalse(registry.contains("b"));
+		assertTrue(registry.contains("c"));
+		registry.release("c", c);
+		assertEquals(3, loadCount);
+	}
+
+	@Test
+	public void testModelsOwnedByTheLoaderAreNotClosed() throws IOException {
+		// the loader caches the model and returns the same instance again
+		final PseudoModel cached = new PseudoModel();
+		final ModelRegistry<PseudoModel> registry = new ModelRegistry<>(1);
+		registry.release("a", registry.acquire("a", () -> cached, false));
+		registry.release("b", registry.acquire("b", this::load));
+		assertFalse(registry.contains("a"));
+		assertFalse(cached.closed);
+		final PseudoModel again = registry.acquire("a", () -> cached, false);
+		assertSame(cached, again);
+		registry.release("a", again);
+		registry.clear();
+		assertFalse(registry.contains("a"));
+		assertFalse(cached.closed);
+	}
+
+	@Test
+	public void testModelsInUseAreNotClosed() throws IOException {
+		final ModelRegistry<PseudoModel> registry = new ModelRegistry<>(1);
+		final PseudoModel a = registry.acquire("a", this::load);
+		final PseudoModel b = registry.acquire("b", this::load);
+		assertFalse(a.closed);
+		assertFalse(b.closed);
+		registry.release("a", a);
+		assertTrue(a.closed);
+		assertEquals(1, registry.size());
+		registry.release("b", b);
+		registry.clear();
+		assertTrue(b.closed);
+		assertEquals(0, registry.size());
+	}
+
+}
@@ -0,0 +1,268 @@
+
+package org.csbdeep.network.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.csbdeep.task.DefaultTask;
+import org.csbdeep.tasks.PseudoNetwork;
+import org.csbdeep.tasks.TestTiles;
+import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.BackgroundTiles;
+import org.csbdeep.tiling.TileResultCache;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class NetworkPipelineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTileOrderIsKept() throws Exception {
+
+		final AdvancedTiledView<FloatType> tiledView = TestTiles.createTiledView();
+
+		final Random random = new Random(42);
+		final DefaultTask task = new DefaultTask();
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+			task)
+		{
+
+			@Override
+			protected Object prepareInput(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				// finish the tiles in a different order than they were submitted
+				Thread.sleep(random.nextInt(20));
+				return tile;
+			}
+		};
+		network.setPipelineDepth(3);
+
+		testResultsMatchTiles(network, task, tiledView);
+	}
+
+	@Test
+	public void testConcurrentRunsKeepTileOrder() throws Exception {
+
+		final AdvancedTiledView<FloatType> tiledView = TestTiles.createTiledView();
+
+		final Random random = new Random(43);
+		final DefaultTask task = new DefaultTask();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch bothRunning = new CountDownLatch(2);
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+			task)
+		{
+
+			@Override
+			protected boolean supportsConcurrentRuns() {
+				return true;
+			}
+
+			@Override
+			public RandomAccessibleInterval<FloatType> execute(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				bothRunning.countDown();
+				bothRunning.await(1, TimeUnit.SECONDS);
+				// finish the runs in a different order than they were started
+				Thread.sleep(random.nextInt(20));
+				running.decrementAndGet();
+				return tile;
+			}
+		};
+		network.setInferenceWorkers(4);
+
+		testResultsMatchTiles(network, task, tiledView);
+
+		assertTrue(maxRunning.get() > 1);
+		assertTrue(maxRunning.get() <= 4);
+	}
+
+	@Test
+	public void testStackedTiles() throws Exception {
+
+		final AdvancedTiledView<FloatType> tiledView = TestTiles.createTiledView();
+
+		final DefaultTask task = new DefaultTask();
+		final List<Long> stackedSizes = new ArrayList<>();
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+			task)
+		{
+
+			@Override
+			protected boolean supportsTileBatching() {
+				return true;
+			}
+
+			@Override
+			public RandomAccessibleInterval<FloatType> execute(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				stackedSizes.add(tile.dimension(1));
+				return tile;
+			}
+		};
+		// the second image dimension is mapped to the first tensor dimension
+		network.inputNode = new BatchFirstImageTensor();
+		network.outputNode = new BatchFirstImageTensor();
+		network.setTilesPerRun(3);
+
+		testResultsMatchTiles(network, task, tiledView);
+
+		// 12 tiles of height 10 were processed in 4 runs
+		assertEquals(4, stackedSizes.size());
+		for (final long size : stackedSizes) {
+			assertEquals(30, size);
+		}
+	}
+
+	@Test
+	public void testBackgroundTilesAreSkipped() throws Exception {
+
+		// only the first column of tiles has content
+		final Img<FloatType> img = ArrayImgs.floats(40, 30);
+		final Cursor<FloatType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			if (cursor.getLongPosition(0) < 10) cursor.get().set(1);
+		}
+		final AdvancedTiledView<FloatType> tiledView = TestTiles.createTiledView(
+			img);
+
+		final AtomicInteger executed = new AtomicInteger();
+		final DefaultTask task = new DefaultTask();
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+			task)
+		{
+
+			@Override
+			public RandomAccessibleInterval<FloatType> execute(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				executed.incrementAndGet();
+				return tile;
+			}
+		};
+		network.setBackgroundTiles(new BackgroundTiles(
+			BackgroundTiles.Statistic.MAX, 0.5f, 0, BackgroundTiles.Fill.CONSTANT,
+			-1));
+		network.resetTileCount();
+		network.setTiledView(tiledView);
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+		network.dispose();
+
+		assertEquals(12, results.size());
+		assertEquals(12, task.getCurrentStep());
+		int skipped = 0;
+		for (int i = 0; i < results.size(); i++) {
+			final RandomAccessibleInterval<FloatType> result = results.get(i);
+			assertTrue(Intervals.equalDimensions(result, Views.iterable(tiledView)
+				.firstElement()));
+			final float value = result.randomAccess().get().get();
+			if (i % 4 == 0) {
+				assertEquals(1, value, 0);
+			}
+			else if (value == -1) {
+				skipped++;
+			}
+			else {
+				// tiles which were prepared before the output size was known
+				assertEquals(0, value, 0);
+			}
+		}
+		assertTrue(skipped > 0);
+		assertEquals(12, executed.get() + skipped);
+	}
+
+	@Test
+	public void testCachedTilesAreNotExecutedAgain() throws Exception {
+
+		final TileResultCache cache = new TileResultCache(folder.newFolder());
+		final AtomicInteger executed = new AtomicInteger();
+		final DefaultTask task = new DefaultTask();
+
+		final PseudoNetwork<FloatType> first = createCountingNetwork(task,
+			executed);
+		first.setTileCache(cache, "model");
+		testResultsMatchTiles(first, task, TestTiles.createTiledView());
+		assertEquals(12, executed.get());
+
+		// the second run reads all results from the cache
+		final PseudoNetwork<FloatType> second = createCountingNetwork(task,
+			executed);
+		second.setTileCache(cache, "model");
+		testResultsMatchTiles(second, task, TestTiles.createTiledView());
+		assertEquals(12, executed.get());
+	}
+
+	private static PseudoNetwork<FloatType> createCountingNetwork(
+		final DefaultTask task, final AtomicInteger executed)
+	{
+		return new PseudoNetwork<FloatType>(task) {
+
+			@Override
+			public RandomAccessibleInterval<FloatType> execute(
+				final RandomAccessibleInterval<FloatType> tile) throws Exception
+			{
+				executed.incrementAndGet();
+				return tile;
+			}
+		};
+	}
+
+	private void testResultsMatchTiles(final PseudoNetwork<FloatType> network,
+		final DefaultTask task, final AdvancedTiledView<FloatType> tiledView)
+		throws Exception
+	{
+		network.resetTileCount();
+		network.setTiledView(tiledView);
+
+		final List<RandomAccessibleInterval<FloatType>> expected =
+			new ArrayList<>();
+		Views.iterable(tiledView).forEach(expected::add);
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+		network.dispose();
+
+		assertNotNull(results);
+		assertEquals(expected.size(), results.size());
+		assertEquals(expected.size(), task.getCurrentStep());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(Intervals.equalDimensions(expected.get(i), results.get(i)));
+			assertEquals(expected.get(i).randomAccess().get().get(), results.get(i)
+				.randomAccess().get().get(), 0);
+		}
+	}
+
+	private static class BatchFirstImageTensor extends ImageTensor {
+
+		@Override
+		public int[] getMappingIndices() {
+			return new int[] { 1, 0 };
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package org.csbdeep.network.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.csbdeep.task.DefaultTask;
+import org.csbdeep.tasks.SyntheticNetwork;
+import org.csbdeep.tasks.TestTiles;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class SyntheticNetworkTest {
+
+	@Test
+	public void testOutputSize() throws Exception {
+		final SyntheticNetwork<FloatType> network = new SyntheticNetwork<>(
+			new DefaultTask());
+		network.setOutputSize(2, 3);
+
+		final Img<FloatType> tile = ArrayImgs.floats(new float[] { 1, 2, 3, 4 },
+			2, 2, 1);
+		final RandomAccessibleInterval<FloatType> output = network.execute(tile);
+
+		assertArrayEquals(new long[] { 2, 2, 3 }, Intervals.dimensionsAsLongArray(
+			output));
+		// without cost the values are copied, the added channels repeat the
+		// last input channel
+		final RandomAccess<FloatType> access = output.randomAccess();
+		access.setPosition(new long[] { 1, 1, 2 });
+		assertEquals(4, access.get().get(), 0);
+	}
+
+	@Test
+	public void testCostPerVoxel() throws Exception {
+		final SyntheticNetwork<FloatType> network = new SyntheticNetwork<>(
+			new DefaultTask());
+		network.setCostPerVoxel(10);
+
+		final RandomAccessibleInterval<FloatType> output = network.execute(
+			ArrayImgs.floats(new float[] { 1 }, 1, 1));
+
+		float expected = 1;
+		for (int i = 0; i < 10; i++) {
+			expected = expected * 0.999f + 0.001f;
+		}
+		assertEquals(expected, output.randomAccess().get().get(), 0);
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		final DefaultTask task = new DefaultTask();
+		final SyntheticNetwork<FloatType> network = new SyntheticNetwork<>(task);
+		network.setInferenceWorkers(2);
+		network.resetTileCount();
+		network.setTiledView(TestTiles.createTiledView());
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+		network.dispose();
+
+		assertEquals(12, results.size());
+		assertEquals(12, task.getCurrentStep());
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+import org.tensorflow.Tensor;
+
+import net.imagej.tensorflow.Tensors;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class DatasetTensorFlowConverterTest {
+
+	@Test
+	public void testFloatTensorMatchesTensors() {
+		final float[] data = new float[7 * 5 * 3];
+		final Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextFloat();
+		}
+		// use an interval with non-zero min, as the tiles of the network input
+		final RandomAccessibleInterval<FloatType> image = Views.interval(ArrayImgs
+			.floats(data, 7, 5, 3), new long[] { 1, 2, 0 }, new long[] { 5, 4, 2 });
+
+		for (final int[] mapping : new int[][] { { 2, 1, 0 }, { 0, 1, 2 }, { 1, 2,
+			0 } })
+		{
+			try (Tensor<?> expected = Tensors.tensor(image, mapping);
+					Tensor<Float> actual = DatasetTensorFlowConverter.floatTensor(image,
+						mapping))
+			{
+				assertArrayEquals(expected.shape(), actual.shape());
+				assertArrayEquals(values(expected), values(actual), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testReusedFloatImgMatchesTensors() {
+		final float[] data = new float[4 * 3 * 2];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i;
+		}
+		for (final int[] mapping : new int[][] { { 2, 1, 0 }, { 0, 1, 2 }, { 1, 2,
+			0 } })
+		{
+			try (Tensor<Float> tensor = Tensor.create(new long[] { 4, 3, 2 },
+				FloatBuffer.wrap(data)))
+			{
+				final RandomAccessibleInterval<FloatType> expected = Tensors.imgFloat(
+					tensor, mapping);
+				final RandomAccessibleInterval<FloatType> actual =
+					DatasetTensorFlowConverter.tensorToReusedFloatImg(tensor, mapping,
+						false);
+				assertArrayEquals(Intervals.dimensionsAsLongArray(expected), Intervals
+					.dimensionsAsLongArray(actual));
+				final Cursor<FloatType> cursor = Views.iterable(expected)
+					.localizingCursor();
+				final RandomAccess<FloatType> access = actual.randomAccess();
+				while (cursor.hasNext()) {
+					cursor.fwd();
+					access.setPosition(cursor);
+					assertEquals(cursor.get().get(), access.get().get(), 0);
+				}
+			}
+		}
+	}
+
+	private static float[] values(final Tensor<?> tensor) {
+		final FloatBuffer buffer = FloatBuffer.allocate(tensor.numElements());
+		tensor.writeTo(buffer);
+		return buffer.array();
+	}
+
+}
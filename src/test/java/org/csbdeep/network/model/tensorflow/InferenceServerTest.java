@@ -0,0 +1,159 @@
+package org.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.csbdeep.network.worker.FloatTensor;
+import org.csbdeep.network.worker.InferenceClient;
+import org.csbdeep.network.worker.TensorProcessor;
+import org.csbdeep.network.worker.WorkerPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InferenceServerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test(timeout = 20000)
+	public void testRequestsAreAnsweredOverHttp() throws Exception {
+		folder.newFolder("model");
+		final List<Long> batchSizes = Collections.synchronizedList(
+			new ArrayList<>());
+		try (InferenceServer server = new AddOneServer(folder.getRoot(), true,
+			batchSizes))
+		{
+			server.start();
+			final InferenceClient client = new InferenceClient(
+				"http://localhost:" + server.getPort() + "/", "model");
+
+			final FloatTensor output = client.process(new FloatTensor(new long[] {
+				1, 3 }, new float[] { 1, 2, 3 }));
+
+			assertArrayEquals(new long[] { 1, 3 }, output.getShape());
+			assertArrayEquals(new float[] { 2, 3, 4 }, output.getData(), 0);
+		}
+		assertEquals(1, batchSizes.size());
+	}
+
+	@Test(timeout = 20000)
+	public void testUnknownModelIsReported() throws Exception {
+		try (InferenceServer server = new AddOneServer(folder.getRoot(), true,
+			new ArrayList<>()))
+		{
+			server.start();
+			final InferenceClient client = new InferenceClient(
+				"http://localhost:" + server.getPort(), "missing");
+			try {
+				client.process(new FloatTensor(new long[] { 1 }, new float[] { 1 }));
+				fail();
+			}
+			catch (final WorkerPool.WorkerException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("404"));
+			}
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testMalformedRequestIsRejected() throws Exception {
+		folder.newFolder("model");
+		try (InferenceServer server = new AddOneServer(folder.getRoot(), true,
+			new ArrayList<>()))
+		{
+			server.start();
+			final HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://localhost:" + server.getPort() + "/models/model")
+					.openConnection();
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				// too short for the number of dimensions
+				out.write(new byte[] { 0, 0 });
+			}
+			assertEquals(400, connection.getResponseCode());
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testFixedBatchSizeIsNotMerged() throws Exception {
+		folder.newFolder("model");
+		final List<Long> batchSizes = Collections.synchronizedList(
+			new ArrayList<>());
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try (InferenceServer server = new AddOneServer(folder.getRoot(), false,
+			batchSizes))
+		{
+			server.start();
+			final InferenceClient client = new InferenceClient(
+				"http://localhost:" + server.getPort(), "model");
+			final List<Future<FloatTensor>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				final FloatTensor input = new FloatTensor(new long[] { 1, 2 },
+					new float[] { i, 10 * i });
+				results.add(pool.submit(() -> client.process(input)));
+			}
+			for (int i = 0; i < 4; i++) {
+				assertArrayEquals(new float[] { i + 1, 10 * i + 1 }, results.get(i)
+					.get().getData(), 0);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		assertEquals(4, batchSizes.size());
+		for (final long size : batchSizes) {
+			assertEquals(1, size);
+		}
+	}
+
+	/**
+	 * Answers with the input plus one instead of loading a TensorFlow model.
+	 */
+	private static class AddOneServer extends InferenceServer {
+
+		private final boolean variableBatchSize;
+		private final List<Long> batchSizes;
+
+		AddOneServer(final File modelsDirectory, final boolean variableBatchSize,
+			final List<Long> batchSizes) throws IOException
+		{
+			super(modelsDirectory, 0, 4, 500);
+			this.variableBatchSize = variableBatchSize;
+			this.batchSizes = batchSizes;
+		}
+
+		@Override
+		protected TensorProcessor loadModel(final File directory) {
+			return input -> {
+				batchSizes.add(input.getShape()[0]);
+				final float[] data = input.getData().clone();
+				for (int i = 0; i < data.length; i++) {
+					data[i] += 1;
+				}
+				return new FloatTensor(input.getShape(), data);
+			};
+		}
+
+		@Override
+		protected boolean hasVariableBatchSize(final TensorProcessor model) {
+			return variableBatchSize;
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.csbdeep.network.model.tensorflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.tensorflow.framework.ConfigProto;
+import org.tensorflow.framework.OptimizerOptions;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+public class SessionConfigTest {
+
+	@Test
+	public void testConfigProto() throws InvalidProtocolBufferException {
+		final ConfigProto proto = ConfigProto.parseFrom(new SessionConfig(4, 2,
+			true).toConfigProto());
+		assertEquals(4, proto.getIntraOpParallelismThreads());
+		assertEquals(2, proto.getInterOpParallelismThreads());
+		assertEquals(OptimizerOptions.GlobalJitLevel.ON_1, proto.getGraphOptions()
+			.getOptimizerOptions().getGlobalJitLevel());
+
+		final ConfigProto defaultProto = ConfigProto.parseFrom(
+			SessionConfig.DEFAULT.toConfigProto());
+		assertEquals(0, defaultProto.getIntraOpParallelismThreads());
+		assertFalse(defaultProto.hasGraphOptions());
+	}
+
+	@Test
+	public void testKeyAndEquality() {
+		assertTrue(new SessionConfig(0, 0, false).isDefault());
+		assertFalse(new SessionConfig(1, 0, false).isDefault());
+		assertEquals(new SessionConfig(2, 1, false), new SessionConfig(2, 1,
+			false));
+		assertNotEquals(new SessionConfig(2, 1, false).getKey(),
+			new SessionConfig(2, 1, true).getKey());
+	}
+
+	@Test
+	public void testTuningCandidates() {
+		final List<SessionConfig> candidates = SessionConfig.getTuningCandidates(
+			16);
+		assertEquals(SessionConfig.DEFAULT, candidates.get(0));
+		assertEquals(5, candidates.size());
+		assertEquals(16, candidates.get(1).getIntraOpThreads());
+		assertEquals(2, candidates.get(4).getIntraOpThreads());
+
+		final List<SessionConfig> singleCore = SessionConfig.getTuningCandidates(
+			1);
+		assertEquals(2, singleCore.size());
+		assertEquals(1, singleCore.get(1).getIntraOpThreads());
+	}
+
+}
@@ -0,0 +1,133 @@
+package org.csbdeep.network.worker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class BatchingProcessorTest {
+
+	@Test
+	public void testConcurrentRequestsAreMerged() throws Exception {
+		final List<Long> batchSizes = Collections.synchronizedList(
+			new ArrayList<>());
+		final TensorProcessor model = input -> {
+			batchSizes.add(input.getShape()[0]);
+			return addOne(input);
+		};
+
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try (BatchingProcessor processor = new BatchingProcessor(model, 4, 2000)) {
+			final List<Future<FloatTensor>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				final FloatTensor input = new FloatTensor(new long[] { 1, 2 },
+					new float[] { i, 10 * i });
+				results.add(pool.submit(() -> processor.process(input)));
+			}
+			for (int i = 0; i < 4; i++) {
+				final FloatTensor output = results.get(i).get();
+				assertArrayEquals(new long[] { 1, 2 }, output.getShape());
+				assertArrayEquals(new float[] { i + 1, 10 * i + 1 }, output.getData(),
+					0);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		// the batch is full before the delay ran out
+		assertEquals(1, batchSizes.size());
+		assertEquals(4, (long) batchSizes.get(0));
+	}
+
+	@Test
+	public void testDifferentShapesAreNotMerged() throws Exception {
+		final List<Long> batchSizes = Collections.synchronizedList(
+			new ArrayList<>());
+		final TensorProcessor model = input -> {
+			batchSizes.add(input.getShape()[0]);
+			return addOne(input);
+		};
+
+		final ExecutorService pool = Executors.newFixedThreadPool(3);
+		try (BatchingProcessor processor = new BatchingProcessor(model, 8, 200)) {
+			final Future<FloatTensor> small1 = pool.submit(() -> processor.process(
+				new FloatTensor(new long[] { 1, 2 }, new float[] { 1, 2 })));
+			final Future<FloatTensor> large = pool.submit(() -> processor.process(
+				new FloatTensor(new long[] { 1, 3 }, new float[] { 1, 2, 3 })));
+			final Future<FloatTensor> small2 = pool.submit(() -> processor.process(
+				new FloatTensor(new long[] { 2, 2 }, new float[] { 3, 4, 5, 6 })));
+
+			assertArrayEquals(new float[] { 2, 3 }, small1.get().getData(), 0);
+			assertArrayEquals(new float[] { 2, 3, 4 }, large.get().getData(), 0);
+			assertArrayEquals(new long[] { 2, 2 }, small2.get().getShape());
+			assertArrayEquals(new float[] { 4, 5, 6, 7 }, small2.get().getData(), 0);
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		long total = 0;
+		for (final long size : batchSizes) {
+			total += size;
+		}
+		assertEquals(4, total);
+		assertTrue(batchSizes.size() >= 2);
+	}
+
+	@Test
+	public void testErrorsArePassedToAllCallers() throws Exception {
+		final List<Long> batchSizes = Collections.synchronizedList(
+			new ArrayList<>());
+		final TensorProcessor model = input -> {
+			batchSizes.add(input.getShape()[0]);
+			throw new IllegalStateException("model failed");
+		};
+
+		final ExecutorService pool = Executors.newFixedThreadPool(3);
+		try (BatchingProcessor processor = new BatchingProcessor(model, 3, 2000)) {
+			final List<Future<FloatTensor>> results = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				final FloatTensor input = new FloatTensor(new long[] { 1 },
+					new float[] { i });
+				results.add(pool.submit(() -> processor.process(input)));
+			}
+			for (final Future<FloatTensor> result : results) {
+				try {
+					result.get();
+					fail();
+				}
+				catch (final ExecutionException e) {
+					assertTrue(e.getCause() instanceof IllegalStateException);
+					assertEquals("model failed", e.getCause().getMessage());
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		// all callers shared the failed run
+		assertEquals(1, batchSizes.size());
+		assertEquals(3, (long) batchSizes.get(0));
+	}
+
+	private static FloatTensor addOne(final FloatTensor input) {
+		final float[] data = input.getData().clone();
+		for (int i = 0; i < data.length; i++) {
+			data[i] += 1;
+		}
+		return new FloatTensor(input.getShape(), data);
+	}
+
+}
@@ -0,0 +1,211 @@
+package org.csbdeep.network.worker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.csbdeep.task.DefaultTask;
+import org.csbdeep.tasks.PseudoNetwork;
+import org.csbdeep.tasks.TestTiles;
+import org.csbdeep.tiling.AdvancedTiledView;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class WorkerPoolTest {
+
+	private final List<WorkerServer> servers = new ArrayList<>();
+
+	@After
+	public void closeServers() {
+		servers.forEach(WorkerServer::close);
+	}
+
+	@Test
+	public void testTilesAreReassignedWhenWorkerDies() throws Exception {
+
+		final List<InetSocketAddress> addresses = new ArrayList<>();
+		addresses.add(startServer(WorkerPoolTest::doubleValues));
+		addresses.add(startServer(WorkerPoolTest::doubleValues));
+
+		// this worker goes away after it processed two tiles
+		final AtomicInteger processed = new AtomicInteger();
+		final AtomicReference<WorkerServer> dying = new AtomicReference<>();
+		addresses.add(startServer(input -> {
+			if (processed.incrementAndGet() > 2) {
+				dying.get().close();
+				throw new IllegalStateException("worker is gone");
+			}
+			return doubleValues(input);
+		}));
+		dying.set(servers.get(2));
+
+		try (WorkerPool pool = new WorkerPool(addresses)) {
+			assertEquals(3, pool.size());
+
+			final AdvancedTiledView<FloatType> tiledView = TestTiles
+				.createTiledView();
+			final DefaultTask task = new DefaultTask();
+			final PseudoNetwork<FloatType> network = new PseudoNetwork<FloatType>(
+				task)
+			{
+
+				@Override
+				protected boolean supportsConcurrentRuns() {
+					return true;
+				}
+
+				@Override
+				public RandomAccessibleInterval<FloatType> execute(
+					final RandomAccessibleInterval<FloatType> tile) throws Exception
+				{
+					final FloatTensor output = pool.process(toTensor(tile));
+					return ArrayImgs.floats(output.getData(), Intervals
+						.dimensionsAsLongArray(tile));
+				}
+			};
+			network.setInferenceWorkers(3);
+			network.resetTileCount();
+			network.setTiledView(tiledView);
+
+			final List<RandomAccessibleInterval<FloatType>> expected =
+				new ArrayList<>();
+			Views.iterable(tiledView).forEach(expected::add);
+
+			final List<RandomAccessibleInterval<FloatType>> results = network
+				.call();
+			network.dispose();
+
+			assertNotNull(results);
+			assertEquals(expected.size(), results.size());
+			for (int i = 0; i < expected.size(); i++) {
+				final Cursor<FloatType> expectedCursor = Views.flatIterable(expected
+					.get(i)).cursor();
+				final Cursor<FloatType> resultCursor = Views.flatIterable(results.get(
+					i)).cursor();
+				while (expectedCursor.hasNext()) {
+					assertEquals(2 * expectedCursor.next().get(), resultCursor.next()
+						.get(), 0);
+				}
+			}
+			assertEquals(2, pool.size());
+		}
+	}
+
+	@Test
+	public void testWorkerErrorsArePassedOn() throws Exception {
+
+		final List<InetSocketAddress> addresses = new ArrayList<>();
+		addresses.add(startServer(input -> {
+			throw new IllegalArgumentException("invalid input");
+		}));
+
+		try (WorkerPool pool = new WorkerPool(addresses)) {
+			final FloatTensor input = new FloatTensor(new long[] { 2 }, new float[] {
+				1, 2 });
+			for (int i = 0; i < 2; i++) {
+				try {
+					pool.process(input);
+					fail();
+				}
+				catch (final WorkerPool.WorkerException e) {
+					// the worker stays in the pool
+					assertEquals(1, pool.size());
+				}
+			}
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testHangingWorkerIsRemoved() throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<InetSocketAddress> addresses = new ArrayList<>();
+		addresses.add(startServer(input -> {
+			release.await();
+			return input;
+		}));
+		addresses.add(startServer(WorkerPoolTest::doubleValues));
+
+		try (WorkerPool pool = new WorkerPool(addresses, 500, null)) {
+			final FloatTensor output = pool.process(new FloatTensor(new long[] { 2 },
+				new float[] { 1, 2 }));
+			assertArrayEquals(new float[] { 2, 4 }, output.getData(), 0);
+			assertEquals(1, pool.size());
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testParseAddresses() {
+		final List<InetSocketAddress> addresses = WorkerPool.parseAddresses(
+			"node1:5000, 5001,");
+		assertEquals(2, addresses.size());
+		assertEquals("node1", addresses.get(0).getHostString());
+		assertEquals(5000, addresses.get(0).getPort());
+		assertEquals(5001, addresses.get(1).getPort());
+	}
+
+	@Test
+	public void testTensorRoundTrip() throws Exception {
+		final List<InetSocketAddress> addresses = new ArrayList<>();
+		addresses.add(startServer(input -> input));
+		try (WorkerPool pool = new WorkerPool(addresses)) {
+			final FloatTensor output = pool.process(new FloatTensor(new long[] { 1,
+				2, 3 }, new float[] { 1, 2, 3, 4, 5, 6 }));
+			assertArrayEquals(new long[] { 1, 2, 3 }, output.getShape());
+			assertArrayEquals(new float[] { 1, 2, 3, 4, 5, 6 }, output.getData(),
+				0);
+		}
+	}
+
+	private InetSocketAddress startServer(final TensorProcessor processor)
+		throws Exception
+	{
+		final WorkerServer server = new WorkerServer(processor, 0);
+		server.start();
+		servers.add(server);
+		return new InetSocketAddress("localhost", server.getPort());
+	}
+
+	private static FloatTensor doubleValues(final FloatTensor input) {
+		final float[] data = input.getData().clone();
+		for (int i = 0; i < data.length; i++) {
+			data[i] *= 2;
+		}
+		return new FloatTensor(input.getShape(), data);
+	}
+
+	private static FloatTensor toTensor(
+		final RandomAccessibleInterval<FloatType> tile)
+	{
+		final long[] dims = Intervals.dimensionsAsLongArray(tile);
+		final float[] data = new float[(int) Intervals.numElements(tile)];
+		int i = 0;
+		for (final FloatType value : Views.flatIterable(tile)) {
+			data[i++] = value.get();
+		}
+		final long[] shape = new long[dims.length];
+		for (int d = 0; d < dims.length; d++) {
+			shape[d] = dims[dims.length - 1 - d];
+		}
+		return new FloatTensor(shape, data);
+	}
+
+}
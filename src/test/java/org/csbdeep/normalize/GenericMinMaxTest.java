@@ -0,0 +1,38 @@
+
+package org.csbdeep.normalize;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Pair;
+
+public class GenericMinMaxTest {
+
+	@Test
+	public void testParallelMinMax() {
+
+		final Img<FloatType> img = ArrayImgs.floats(100, 50, 8);
+		final Random random = new Random(3);
+		img.forEach(pixel -> pixel.set(random.nextFloat()));
+		// place the extremes into different chunks
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new long[] { 0, 0, 0 });
+		ra.get().set(-2f);
+		ra.setPosition(new long[] { 99, 49, 7 });
+		ra.get().set(3f);
+
+		final Pair<FloatType, FloatType> minMax = new GenericMinMax<FloatType>()
+			.calculate(img);
+
+		assertEquals(-2f, minMax.getA().get(), 0);
+		assertEquals(3f, minMax.getB().get(), 0);
+	}
+
+}
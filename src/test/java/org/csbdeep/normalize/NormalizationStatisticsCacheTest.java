@@ -0,0 +1,89 @@
+package org.csbdeep.normalize;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class NormalizationStatisticsCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testKeyDependsOnContentAndPercentiles() throws IOException {
+		final NormalizationStatisticsCache cache = new NormalizationStatisticsCache(
+			folder.newFolder());
+		final float[] percentiles = { 3, 99.8f };
+		final ArrayImg<FloatType, FloatArray> img = createImage(0);
+		final String key = cache.getKey(img, percentiles);
+		assertEquals(key, cache.getKey(createImage(0), percentiles));
+		assertNotEquals(key, cache.getKey(createImage(1), percentiles));
+		assertNotEquals(key, cache.getKey(img, new float[] { 1, 99.8f }));
+	}
+
+	@Test
+	public void testKeyOfSameImageIsComputedOnce() throws IOException {
+		final NormalizationStatisticsCache cache = new NormalizationStatisticsCache(
+			folder.newFolder());
+		final float[] percentiles = { 3, 99.8f };
+		final ArrayImg<FloatType, FloatArray> img = createImage(0);
+		final String key = cache.getKey(img, percentiles);
+		// the content is not hashed again for the same instance
+		img.firstElement().set(-1);
+		assertEquals(key, cache.getKey(img, percentiles));
+		assertNotEquals(key, new NormalizationStatisticsCache(folder.newFolder())
+			.getKey(img, percentiles));
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		final NormalizationStatisticsCache cache = new NormalizationStatisticsCache(
+			folder.newFolder());
+		final float[] percentiles = { 3, 99.8f };
+		final String key = cache.getKey(createImage(0), percentiles);
+		assertNull(cache.get(key, percentiles));
+		cache.put(key, percentiles, new float[] { 5, 250 });
+		assertArrayEquals(new float[] { 5, 250 }, cache.get(key, percentiles), 0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+		final NormalizationStatisticsCache cache = new NormalizationStatisticsCache(
+			folder.newFolder(), 2);
+		final float[] percentiles = { 3, 99.8f };
+		final String[] keys = new String[3];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = cache.getKey(createImage(i), percentiles);
+		}
+		cache.put(keys[0], percentiles, new float[] { 0, 1 });
+		cache.put(keys[1], percentiles, new float[] { 1, 2 });
+		new File(cache.getDirectory(), keys[0] + ".json").setLastModified(1000);
+		new File(cache.getDirectory(), keys[1] + ".json").setLastModified(2000);
+		cache.put(keys[2], percentiles, new float[] { 2, 3 });
+		assertNull(cache.get(keys[0], percentiles));
+		assertArrayEquals(new float[] { 1, 2 }, cache.get(keys[1], percentiles), 0);
+		assertArrayEquals(new float[] { 2, 3 }, cache.get(keys[2], percentiles), 0);
+	}
+
+	private ArrayImg<FloatType, FloatArray> createImage(final int offset) {
+		final float[] data = new float[40 * 30 * 8];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (i * 31 + offset) % 1000;
+		}
+		return ArrayImgs.floats(data, 40, 30, 8);
+	}
+
+}
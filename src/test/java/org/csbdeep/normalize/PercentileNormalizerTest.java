@@ -0,0 +1,107 @@
+package org.csbdeep.normalize;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.imagej.Dataset;
+import net.imagej.ImageJ;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class PercentileNormalizerTest {
+
+	@Test
+	public void testLazyNormalizationMatchesCopy() {
+
+		final ImageJ ij = new ImageJ();
+
+		final Dataset input = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 30, 20, 5 }, "input", new AxisType[] { Axes.X, Axes.Y,
+				Axes.Z });
+		final Random random = new Random(7);
+		final Cursor<? extends RealType<?>> cursor = input.getImgPlus().cursor();
+		while (cursor.hasNext()) {
+			cursor.next().setReal(random.nextInt(4000));
+		}
+
+		final Dataset copied = normalize(ij, input, false);
+		final Dataset lazy = normalize(ij, input, true);
+
+		assertEquals(Axes.Z, lazy.axis(2).type());
+		final Cursor<? extends RealType<?>> expected = copied.getImgPlus()
+			.localizingCursor();
+		final RandomAccess<? extends RealType<?>> actual = lazy.getImgPlus()
+			.randomAccess();
+		while (expected.hasNext()) {
+			expected.fwd();
+			actual.setPosition(expected);
+			assertEquals(expected.get().getRealFloat(), actual.get().getRealFloat(),
+				0);
+		}
+
+		ij.context().dispose();
+	}
+
+	@Test
+	public void testRegionUsesStatisticsOfWholeInput() {
+
+		final ImageJ ij = new ImageJ();
+
+		final Dataset input = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 30, 20 }, "input", new AxisType[] { Axes.X, Axes.Y });
+		final Cursor<? extends RealType<?>> cursor = input.getImgPlus()
+			.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().setReal(cursor.getIntPosition(0) * 100);
+		}
+
+		final Interval region = new FinalInterval(new long[] { 5, 2 },
+			new long[] { 14, 11 });
+		final Dataset whole = normalize(ij, input, false, null);
+		for (final boolean lazy : new boolean[] { false, true }) {
+			final Dataset cropped = normalize(ij, input, lazy, region);
+			assertEquals(10, cropped.dimension(0));
+			assertEquals(10, cropped.dimension(1));
+			final Cursor<? extends RealType<?>> actual = cropped.getImgPlus()
+				.localizingCursor();
+			final RandomAccess<? extends RealType<?>> expected = whole.getImgPlus()
+				.randomAccess();
+			while (actual.hasNext()) {
+				actual.fwd();
+				expected.setPosition(actual.getLongPosition(0) + 5, 0);
+				expected.setPosition(actual.getLongPosition(1) + 2, 1);
+				assertEquals(expected.get().getRealFloat(), actual.get()
+					.getRealFloat(), 0);
+			}
+		}
+
+		ij.context().dispose();
+	}
+
+	private Dataset normalize(final ImageJ ij, final Dataset input,
+		final boolean lazy)
+	{
+		return normalize(ij, input, lazy, null);
+	}
+
+	private Dataset normalize(final ImageJ ij, final Dataset input,
+		final boolean lazy, final Interval region)
+	{
+		final PercentileNormalizer normalizer = new PercentileNormalizer();
+		normalizer.setup(new float[] { 3.0f, 99.8f }, new float[] { 0, 1 }, true);
+		normalizer.setLazy(lazy);
+		normalizer.setRegion(region);
+		return normalizer.normalize(input, ij.op(), ij.dataset());
+	}
+
+}
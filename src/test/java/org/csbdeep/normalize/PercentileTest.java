@@ -3,6 +3,7 @@ package org.csbdeep.normalize;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
@@ -14,6 +15,7 @@ import net.imglib2.Cursor;
 import net.imglib2.cache.img.DiskCachedCellImgFactory;
 import net.imglib2.histogram.Histogram1d;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.type.numeric.real.FloatType;
 
@@ -60,6 +62,64 @@ public class PercentileTest {
 
 	}
 
+	@Test
+	public void testRefinedPercentilesAreExact() {
+
+		// more values than are sorted directly, with many duplicates
+		final long[] dimensions = new long[] { 400, 300 };
+		final float[] data = new float[(int) mult(dimensions)];
+		Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt(1000) * 0.37f;
+		}
+		data[7] = 1e9f;
+		data[42] = -1e9f;
+
+		final Img<FloatType> img = ArrayImgs.floats(data, dimensions);
+		final float[] percentiles = { 0f, 3f, 50f, 99.8f, 100f };
+		final float[] res = new HistogramPercentile<FloatType>()
+			.computePercentiles(img, percentiles, null);
+
+		final float[] sorted = data.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < percentiles.length; i++) {
+			final int index = (int) Math.round((sorted.length - 1) *
+				(double) percentiles[i] / 100.);
+			assertEquals(sorted[index], res[i], 0);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testInfiniteValuesAreIgnored() {
+
+		// more values than are sorted directly
+		final long[] dimensions = new long[] { 400, 300 };
+		final float[] data = new float[(int) mult(dimensions)];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i % 1000;
+		}
+		data[3] = Float.POSITIVE_INFINITY;
+		data[5] = Float.NEGATIVE_INFINITY;
+		data[9] = Float.NaN;
+
+		final Img<FloatType> img = ArrayImgs.floats(data, dimensions);
+		final float[] res = new HistogramPercentile<FloatType>()
+			.computePercentiles(img, new float[] { 0f, 100f }, null);
+		assertEquals(0f, res[0], 0);
+		assertEquals(999f, res[1], 0);
+	}
+
+	@Test
+	public void testPercentilesOfConstantImage() {
+
+		final Img<FloatType> img = ArrayImgs.floats(300, 300);
+		img.forEach(pixel -> pixel.set(5f));
+		final float[] res = new HistogramPercentile<FloatType>()
+			.computePercentiles(img, new float[] { 3f, 99.8f }, null);
+		assertEquals(5f, res[0], 0);
+		assertEquals(5f, res[1], 0);
+	}
+
 	@Test
 	@Ignore
 	public void testPercentileInvertedArrayLong() {
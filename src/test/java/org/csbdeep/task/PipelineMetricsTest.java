@@ -0,0 +1,90 @@
+package org.csbdeep.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.csbdeep.tasks.PseudoNetwork;
+import org.csbdeep.tasks.TestTiles;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class PipelineMetricsTest {
+
+	@Test
+	public void testNetworkRecordsTiles() throws Exception {
+		final StageMetrics metrics = new StageMetrics("Execution");
+		final PseudoNetwork<FloatType> network = new PseudoNetwork<>(
+			new DefaultTask());
+		network.setMetrics(metrics);
+		network.resetTileCount();
+		network.setTiledView(TestTiles.createTiledView());
+
+		final List<RandomAccessibleInterval<FloatType>> results = network.call();
+		network.dispose();
+
+		assertEquals(12, results.size());
+		assertEquals(12, metrics.getTiles());
+		assertEquals(1200, metrics.getVoxels());
+		// input and output tensors of the same size
+		assertEquals(2 * 1200 * Float.BYTES, metrics.getBytes());
+		assertTrue(metrics.getRunNanos() > 0);
+	}
+
+	@Test
+	public void testWallTime() throws InterruptedException {
+		final StageMetrics metrics = new StageMetrics("Tiling");
+		assertEquals(0, metrics.getWallTimeNanos());
+		metrics.start();
+		Thread.sleep(20);
+		// starting a running stage again does not reset the time
+		metrics.start();
+		metrics.stop();
+		final long wallTime = metrics.getWallTimeNanos();
+		assertTrue(wallTime >= 20_000_000);
+		metrics.stop();
+		assertEquals(wallTime, metrics.getWallTimeNanos());
+		metrics.addTiles(4, 400, 3200);
+		assertEquals(4 * 1e9 / wallTime, metrics.getTilesPerSecond(), 1e-6);
+	}
+
+	@Test
+	public void testDump() throws IOException {
+		final PipelineMetrics metrics = new PipelineMetrics();
+		metrics.get("Preprocessing");
+		final StageMetrics execution = metrics.get("Execution");
+		execution.addTiles(3, 300, 2400);
+		execution.addOutOfMemoryRetry();
+
+		assertEquals(2, metrics.getStages().size());
+		assertEquals("Preprocessing", metrics.getStages().get(0).getName());
+
+		final JsonObject json = new JsonParser().parse(metrics.toJson())
+			.getAsJsonObject();
+		assertEquals(3, json.getAsJsonObject("Execution").get("tiles").getAsLong());
+		assertEquals(1, json.getAsJsonObject("Execution").get(
+			"outOfMemoryRetries").getAsInt());
+
+		final String prometheus = metrics.toPrometheus();
+		assertTrue(prometheus.contains(
+			"csbdeep_stage_tiles_total{stage=\"Execution\"} 3.0\n"));
+		assertTrue(prometheus.contains(
+			"# TYPE csbdeep_stage_out_of_memory_retries_total counter\n"));
+
+		final File file = File.createTempFile("metrics", ".prom");
+		file.deleteOnExit();
+		metrics.write(file);
+		assertEquals(prometheus, new String(Files.readAllBytes(file.toPath()),
+			StandardCharsets.UTF_8));
+	}
+
+}
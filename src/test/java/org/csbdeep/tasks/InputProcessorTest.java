@@ -13,7 +13,10 @@ import net.imagej.Dataset;
 import net.imagej.ImageJ;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.FloatType;
 
 public class InputProcessorTest {
@@ -38,4 +41,28 @@ public class InputProcessorTest {
 
 	}
 
+	@Test
+	public void testInputIsNotCopied() {
+		final ImageJ ij = new ImageJ();
+
+		final Dataset input = ij.dataset().create(new UnsignedShortType(),
+			new long[] { 10, 20 }, "", new AxisType[] { Axes.X, Axes.Y });
+
+		final InputProcessor inputProcessor = new DefaultInputProcessor();
+
+		final RandomAccessibleInterval<FloatType> output = inputProcessor.run(
+			input, 3).get(0);
+
+		final RandomAccess<? extends RealType<?>> in = input.getImgPlus()
+			.randomAccess();
+		in.setPosition(new long[] { 3, 4 });
+		in.get().setReal(42);
+
+		final RandomAccess<FloatType> out = output.randomAccess();
+		out.setPosition(new long[] { 3, 4, 0 });
+		assertEquals(42, out.get().get(), 0);
+
+		ij.context().dispose();
+	}
+
 }
@@ -0,0 +1,129 @@
+package org.csbdeep.tasks;
+
+import java.util.Arrays;
+
+import org.scijava.io.location.Location;
+
+import org.csbdeep.network.model.DefaultNetwork;
+import org.csbdeep.task.Task;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Pure Java stand-in for a model, used to measure the pipeline around the
+ * model (tiling, conversion, merging, progress) without TensorFlow. Each
+ * output voxel is computed from the input voxel at the same position with a
+ * configurable amount of arithmetic work. The output can differ from the
+ * input in the size of single dimensions, e.g. to mimic a model with more
+ * output channels.
+ */
+public class SyntheticNetwork<T extends RealType<T> & NativeType<T>> extends
+	DefaultNetwork<T>
+{
+
+	private int costPerVoxel = 0;
+	private long[] outputSizes = new long[0];
+
+	public SyntheticNetwork(final Task associatedTask) {
+		super(associatedTask);
+	}
+
+	/**
+	 * Set the number of multiply-add operations computed for each output
+	 * voxel.
+	 */
+	public void setCostPerVoxel(final int costPerVoxel) {
+		this.costPerVoxel = Math.max(0, costPerVoxel);
+	}
+
+	/**
+	 * Set the size of the given tile dimension in the output. Output positions
+	 * outside of the tile read the closest input voxel.
+	 */
+	public void setOutputSize(final int dimension, final long size) {
+		if (outputSizes.length <= dimension) {
+			final int oldLength = outputSizes.length;
+			outputSizes = Arrays.copyOf(outputSizes, dimension + 1);
+			Arrays.fill(outputSizes, oldLength, outputSizes.length, -1);
+		}
+		outputSizes[dimension] = size;
+	}
+
+	@Override
+	public boolean loadModel(final String pathOrURL, final String modelName) {
+		return true;
+	}
+
+	@Override
+	protected boolean loadModel(final Location source, final String modelName) {
+		return true;
+	}
+
+	@Override
+	public void preprocess() {}
+
+	@Override
+	public boolean supportsGPU() {
+		return false;
+	}
+
+	@Override
+	public void initMapping() {}
+
+	@Override
+	public void calculateMapping() {}
+
+	@Override
+	public void doDimensionReduction() {}
+
+	@Override
+	public boolean libraryLoaded() {
+		return true;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return true;
+	}
+
+	@Override
+	protected boolean supportsConcurrentRuns() {
+		return true;
+	}
+
+	@Override
+	public RandomAccessibleInterval<T> execute(
+		final RandomAccessibleInterval<T> tile) throws Exception
+	{
+		final long[] dims = Intervals.dimensionsAsLongArray(tile);
+		for (int d = 0; d < Math.min(dims.length, outputSizes.length); d++) {
+			if (outputSizes[d] > 0) dims[d] = outputSizes[d];
+		}
+		final T type = Util.getTypeFromInterval(tile);
+		final Img<T> output = Util.getArrayOrCellImgFactory(new FinalInterval(
+			dims), type).create(dims);
+		final RandomAccess<T> input = Views.extendBorder(Views.zeroMin(tile))
+			.randomAccess();
+		final Cursor<T> cursor = output.localizingCursor();
+		final int cost = costPerVoxel;
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			input.setPosition(cursor);
+			float value = input.get().getRealFloat();
+			for (int i = 0; i < cost; i++) {
+				value = value * 0.999f + 0.001f;
+			}
+			cursor.get().setReal(value);
+		}
+		return output;
+	}
+
+}
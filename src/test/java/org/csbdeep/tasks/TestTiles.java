@@ -0,0 +1,50 @@
+package org.csbdeep.tasks;
+
+import org.csbdeep.tiling.AdvancedTiledView;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Small tiled image for tests of the tile pipeline: 40x30 pixels, split into
+ * 4x3 tiles of 10x10 pixels.
+ */
+public class TestTiles {
+
+	public static final AxisType[] AXES = { Axes.X, Axes.Y };
+
+	/**
+	 * @return a 40x30 image whose values encode the position, x + 100 * y
+	 */
+	public static Img<FloatType> createImage() {
+		final Img<FloatType> img = ArrayImgs.floats(40, 30);
+		final Cursor<FloatType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().set(cursor.getLongPosition(0) + 100 * cursor
+				.getLongPosition(1));
+		}
+		return img;
+	}
+
+	/**
+	 * @return the image of {@link #createImage()} split into 12 tiles
+	 */
+	public static AdvancedTiledView<FloatType> createTiledView() {
+		return createTiledView(createImage());
+	}
+
+	/**
+	 * @return the given 40x30 image split into 12 tiles of 10x10 pixels
+	 */
+	public static AdvancedTiledView<FloatType> createTiledView(
+		final Img<FloatType> img)
+	{
+		return new AdvancedTiledView<>(img, new long[] { 10, 10 }, new long[] { 0,
+			0 }, AXES);
+	}
+
+}
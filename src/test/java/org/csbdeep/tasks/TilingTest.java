@@ -2,9 +2,12 @@
 package org.csbdeep.tasks;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -12,12 +15,16 @@ import org.csbdeep.CSBDeepTest;
 import org.csbdeep.task.DefaultTask;
 import org.csbdeep.task.Task;
 import org.csbdeep.tiling.AdvancedTiledView;
+import org.csbdeep.tiling.CompletedTiles;
 import org.csbdeep.tiling.DefaultTiling;
+import org.csbdeep.tiling.DiskOutputSink;
+import org.csbdeep.tiling.PreallocatedOutputSink;
 import org.csbdeep.tiling.Tiling;
 import net.imagej.Dataset;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.view.Views;
@@ -245,6 +252,161 @@ public class TilingTest extends CSBDeepTest {
 		tiledView.dispose();
 	}
 
+	@Test
+	public void testTilingWithDiskOutputSink() throws IOException {
+
+		final Tiling<FloatType> tiling = new DefaultTiling<>(8, 1, 32, 32);
+		final long[] datasetSize = { 10, 50, 100 };
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		final Task task = new DefaultTask();
+
+		launchImageJ();
+
+		final Dataset dataset = ij.dataset().create(new FloatType(), datasetSize,
+			"", axes);
+		final RandomAccessibleInterval<FloatType> input =
+			(RandomAccessibleInterval<FloatType>) dataset.getImgPlus();
+		final Random random = new Random(42);
+		Views.iterable(input).forEach(pixel -> pixel.set(random.nextFloat()));
+
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, getTilingActions(dataset), task);
+
+		final DiskOutputSink sink = new DiskOutputSink();
+		tiledView.getProcessedTiles().clear();
+		final Cursor<RandomAccessibleInterval<FloatType>> cursor = Views.iterable(
+			tiledView).cursor();
+		while (cursor.hasNext()) {
+			tiledView.getProcessedTiles().add(sink.store(tiling.removePadding(cursor
+				.next(), tiledView.getOverlapComplete(), axes, axes)));
+		}
+		tiledView.setPaddingRemoved(true);
+
+		final RandomAccessibleInterval<FloatType> output = tiling.postprocess(task,
+			tiledView, axes);
+
+		compareDimensions(input, output);
+		final Cursor<FloatType> expected = Views.iterable(input).localizingCursor();
+		final RandomAccess<FloatType> actual = output.randomAccess();
+		while (expected.hasNext()) {
+			expected.fwd();
+			actual.setPosition(expected);
+			assertEquals(expected.get().get(), actual.get().get(), 0);
+		}
+
+		tiledView.dispose();
+		sink.dispose();
+	}
+
+	@Test
+	public void testTilingWithPreallocatedOutput() {
+
+		final Tiling<FloatType> tiling = new DefaultTiling<>(8, 1, 32, 32);
+		final long[] datasetSize = { 10, 50, 100 };
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		final Task task = new DefaultTask();
+
+		launchImageJ();
+
+		final Dataset dataset = ij.dataset().create(new FloatType(), datasetSize,
+			"", axes);
+		final RandomAccessibleInterval<FloatType> input =
+			(RandomAccessibleInterval<FloatType>) dataset.getImgPlus();
+		final Random random = new Random(43);
+		Views.iterable(input).forEach(pixel -> pixel.set(random.nextFloat()));
+
+		final AdvancedTiledView<FloatType> tiledView = tiling.preprocess(input,
+			axes, getTilingActions(dataset), task);
+
+		final PreallocatedOutputSink sink = new PreallocatedOutputSink(tiledView,
+			axes);
+		final Cursor<RandomAccessibleInterval<FloatType>> cursor = Views.iterable(
+			tiledView).cursor();
+		while (cursor.hasNext()) {
+			sink.store(tiling.removePadding(cursor.next(), tiledView
+				.getOverlapComplete(), axes, axes));
+		}
+		tiledView.setMergedOutput(sink.getOutput());
+
+		final RandomAccessibleInterval<FloatType> output = tiling.postprocess(task,
+			tiledView, axes);
+
+		compareDimensions(input, output);
+		final Cursor<FloatType> expected = Views.iterable(input).localizingCursor();
+		final RandomAccess<FloatType> actual = output.randomAccess();
+		while (expected.hasNext()) {
+			expected.fwd();
+			actual.setPosition(expected);
+			assertEquals(expected.get().get(), actual.get().get(), 0);
+		}
+
+		tiledView.dispose();
+	}
+
+	@Test
+	public void testTilingSkipsCompletedTiles() {
+
+		final long[] datasetSize = { 10, 50, 100 };
+		final AxisType[] axes = { Axes.Z, Axes.X, Axes.Y };
+		final Task task = new DefaultTask();
+
+		launchImageJ();
+
+		final Dataset dataset = ij.dataset().create(new FloatType(), datasetSize,
+			"", axes);
+		final RandomAccessibleInterval<FloatType> input =
+			(RandomAccessibleInterval<FloatType>) dataset.getImgPlus();
+		final Random random = new Random(44);
+		Views.iterable(input).forEach(pixel -> pixel.set(random.nextFloat()));
+
+		// the first run fails after the first tile
+		final CompletedTiles completed = new CompletedTiles();
+		final Tiling<FloatType> coarseTiling = new DefaultTiling<>(2, 1, 32, 32);
+		final AdvancedTiledView<FloatType> coarseView = coarseTiling.preprocess(
+			input, axes, getTilingActions(dataset), task);
+		final PreallocatedOutputSink coarseSink = new PreallocatedOutputSink(
+			coarseView, axes, completed);
+		coarseSink.store(coarseTiling.removePadding(Views.iterable(coarseView)
+			.firstElement(), coarseView.getOverlapComplete(), axes, axes));
+		assertFalse(completed.isEmpty());
+
+		// the second run only processes the tiles which are still missing
+		final Tiling<FloatType> fineTiling = new DefaultTiling<>(8, 1, 32, 32);
+		final AdvancedTiledView<FloatType> fineView = fineTiling.preprocess(input,
+			axes, getTilingActions(dataset), task);
+		final PreallocatedOutputSink fineSink = new PreallocatedOutputSink(
+			fineView, axes, completed);
+		final Cursor<RandomAccessibleInterval<FloatType>> cursor = Views.iterable(
+			fineView).cursor();
+		int index = 0;
+		int processed = 0;
+		while (cursor.hasNext()) {
+			final RandomAccessibleInterval<FloatType> tile = cursor.next();
+			if (fineSink.isCompleted(index++)) continue;
+			fineSink.store(fineTiling.removePadding(tile, fineView
+				.getOverlapComplete(), axes, axes));
+			processed++;
+		}
+		assertTrue(processed > 0);
+		assertTrue(processed < index);
+		fineView.setMergedOutput(fineSink.getOutput());
+
+		final RandomAccessibleInterval<FloatType> output = fineTiling.postprocess(
+			task, fineView, axes);
+
+		compareDimensions(input, output);
+		final Cursor<FloatType> expected = Views.iterable(input).localizingCursor();
+		final RandomAccess<FloatType> actual = output.randomAccess();
+		while (expected.hasNext()) {
+			expected.fwd();
+			actual.setPosition(expected);
+			assertEquals(expected.get().get(), actual.get().get(), 0);
+		}
+
+		coarseView.dispose();
+		fineView.dispose();
+	}
+
 	private AdvancedTiledView<FloatType> runTiling(long[] datasetSize, AxisType[] axes, Tiling tiling, Tiling.TilingAction[] actions) {
 
 		launchImageJ();
@@ -0,0 +1,83 @@
+package org.csbdeep.tiling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class BackgroundTilesTest {
+
+	// 10 values, one of them bright
+	private final Img<FloatType> tile = ArrayImgs.floats(new float[] { 0, 0, 0,
+		0, 0, 0, 0, 0, 0, 5 }, 10);
+
+	@Test
+	public void testMax() {
+		assertFalse(create(BackgroundTiles.Statistic.MAX, 1, 0).isBackground(
+			tile));
+		assertTrue(create(BackgroundTiles.Statistic.MAX, 5, 0).isBackground(
+			tile));
+	}
+
+	@Test
+	public void testMean() {
+		assertFalse(create(BackgroundTiles.Statistic.MEAN, 0.4f, 0).isBackground(
+			tile));
+		assertTrue(create(BackgroundTiles.Statistic.MEAN, 0.5f, 0).isBackground(
+			tile));
+	}
+
+	@Test
+	public void testFractionAbove() {
+		assertFalse(create(BackgroundTiles.Statistic.FRACTION_ABOVE, 1, 0.05f)
+			.isBackground(tile));
+		assertTrue(create(BackgroundTiles.Statistic.FRACTION_ABOVE, 1, 0.2f)
+			.isBackground(tile));
+	}
+
+	@Test
+	public void testConstantResult() {
+		final BackgroundTiles background = new BackgroundTiles(
+			BackgroundTiles.Statistic.MAX, 0, 0, BackgroundTiles.Fill.CONSTANT, 7);
+		// the output size can differ from the tile size
+		final RandomAccessibleInterval<FloatType> result = background.createResult(
+			tile, new long[] { 10, 2 });
+		assertArrayEquals(new long[] { 10, 2 }, Intervals.dimensionsAsLongArray(
+			result));
+		for (final FloatType value : Views.iterable(result)) {
+			assertEquals(7, value.get(), 0);
+		}
+	}
+
+	@Test
+	public void testPassthroughResult() {
+		final BackgroundTiles background = new BackgroundTiles(
+			BackgroundTiles.Statistic.MAX, 0, 0, BackgroundTiles.Fill.PASSTHROUGH,
+			0);
+		final RandomAccess<FloatType> access = background.createResult(tile,
+			new long[] { 10 }).randomAccess();
+		access.setPosition(9, 0);
+		assertEquals(5, access.get().get(), 0);
+		// the input cannot be passed through if the output has another size
+		assertNull(background.createResult(tile, new long[] { 10, 2 }));
+	}
+
+	private static BackgroundTiles create(final BackgroundTiles.Statistic statistic,
+		final float threshold, final float fraction)
+	{
+		return new BackgroundTiles(statistic, threshold, fraction,
+			BackgroundTiles.Fill.CONSTANT, 0);
+	}
+
+}
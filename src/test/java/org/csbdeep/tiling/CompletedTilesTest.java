@@ -0,0 +1,40 @@
+package org.csbdeep.tiling;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+public class CompletedTilesTest {
+
+	@Test
+	public void testContainsRegionCoveredByMultipleTiles() {
+		final CompletedTiles completed = new CompletedTiles();
+		assertTrue(completed.isEmpty());
+		completed.add(interval(0, 0, 49, 99));
+		completed.add(interval(50, 0, 99, 49));
+		assertFalse(completed.isEmpty());
+		assertTrue(completed.contains(interval(0, 0, 49, 99)));
+		assertTrue(completed.contains(interval(20, 10, 80, 40)));
+		assertFalse(completed.contains(interval(20, 10, 80, 60)));
+		assertFalse(completed.contains(interval(50, 50, 99, 99)));
+	}
+
+	@Test
+	public void testEmptyRegionIsAlwaysContained() {
+		final CompletedTiles completed = new CompletedTiles();
+		assertTrue(completed.contains(interval(10, 10, 9, 9)));
+		assertFalse(completed.contains(interval(0, 0, 9, 9)));
+	}
+
+	private static Interval interval(final long minX, final long minY,
+		final long maxX, final long maxY)
+	{
+		return new FinalInterval(new long[] { minX, minY }, new long[] { maxX,
+			maxY });
+	}
+
+}
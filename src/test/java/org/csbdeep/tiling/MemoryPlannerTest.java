@@ -0,0 +1,86 @@
+package org.csbdeep.tiling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class MemoryPlannerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Interval input = new FinalInterval(512, 512, 1);
+
+	private final Tiling.TilingAction[] actions = {
+		Tiling.TilingAction.TILE_WITH_PADDING,
+		Tiling.TilingAction.TILE_WITH_PADDING,
+		Tiling.TilingAction.NO_TILING };
+
+	@Test
+	public void testPaddedTileSize() {
+		final DefaultTiling<FloatType> tiling = new DefaultTiling<>(4, 1, 32, 16);
+		assertArrayEquals(new long[] { 288, 288, 1 }, tiling.getPaddedTileSize(
+			input, actions));
+		assertEquals(4, tiling.getTilesNum());
+	}
+
+	@Test
+	public void testKeepTilingIfMemoryIsSufficient() {
+		final MemoryPlanner planner = new MemoryPlanner(Long.MAX_VALUE,
+			Long.MAX_VALUE);
+		final MemoryPlanner.Plan plan = planner.plan(input, actions, 1, 1, 2, 32,
+			16);
+		assertTrue(plan.fits());
+		assertEquals(1, plan.getNTiles());
+		assertEquals(2, plan.getTilesPerRun());
+	}
+
+	@Test
+	public void testSplitIntoMoreTilesIfMemoryIsLimited() {
+		final long available = 20 * 1024 * 1024;
+		final MemoryPlanner planner = new MemoryPlanner(available, available);
+		final MemoryPlanner.Plan plan = planner.plan(input, actions, 1, 1, 2, 32,
+			16);
+		assertTrue(plan.fits());
+		assertEquals(1, plan.getTilesPerRun());
+		assertTrue(plan.getNTiles() > 1);
+		assertTrue(plan.getHeapBytes() <= available);
+		assertTrue(plan.getNativeBytes() <= available);
+	}
+
+	@Test
+	public void testReturnFinestTilingIfNothingFits() {
+		final MemoryPlanner planner = new MemoryPlanner(1024, 1024);
+		final MemoryPlanner.Plan plan = planner.plan(input, actions, 1, 1, 1, 32,
+			0);
+		assertFalse(plan.fits());
+		assertEquals(16 * 16, plan.getNTiles());
+	}
+
+	@Test
+	public void testAvailableMemoryIncludesPageCache() throws IOException {
+		final File meminfo = folder.newFile("meminfo");
+		Files.write(meminfo.toPath(), Arrays.asList("MemTotal:       16303412 kB",
+			"MemFree:          204512 kB", "MemAvailable:    9875620 kB",
+			"Buffers:          512340 kB"), StandardCharsets.US_ASCII);
+		assertEquals(9875620L * 1024, MemoryPlanner.readMemAvailable(meminfo));
+		assertEquals(-1, MemoryPlanner.readMemAvailable(new File(folder.getRoot(),
+			"missing")));
+	}
+
+}
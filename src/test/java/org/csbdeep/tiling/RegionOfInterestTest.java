@@ -0,0 +1,88 @@
+package org.csbdeep.tiling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class RegionOfInterestTest {
+
+	private final Interval image = new FinalInterval(100, 80, 3);
+	private final AxisType[] axes = { Axes.X, Axes.Y, Axes.CHANNEL };
+
+	@Test
+	public void testEmptyTextMeansWholeImage() {
+		assertNull(RegionOfInterest.parse("", image, axes, 8));
+		assertNull(RegionOfInterest.parse(null, image, axes, 8));
+	}
+
+	@Test
+	public void testHaloIsClampedToImage() {
+		final RegionOfInterest roi = RegionOfInterest.parse("4, 20, 30, 10",
+			image, axes, 8);
+		assertArrayEquals(new long[] { 4, 20, 0 }, Intervals.minAsLongArray(roi
+			.getRegion()));
+		assertArrayEquals(new long[] { 33, 29, 2 }, Intervals.maxAsLongArray(roi
+			.getRegion()));
+		assertArrayEquals(new long[] { 0, 12, 0 }, Intervals.minAsLongArray(roi
+			.getProcessedRegion()));
+		assertArrayEquals(new long[] { 41, 37, 2 }, Intervals.maxAsLongArray(roi
+			.getProcessedRegion()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZWithoutZAxisIsRejected() {
+		RegionOfInterest.parse("0,0,0,10,10,10", image, axes, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRegionOutsideOfImageIsRejected() {
+		RegionOfInterest.parse("100,0,10,10", image, axes, 0);
+	}
+
+	@Test
+	public void testCropRemovesHalo() {
+		final RegionOfInterest roi = RegionOfInterest.parse("10,10,5,5", image,
+			axes, 4);
+		// result of the processed region, each value is its x position in the
+		// input
+		final Img<FloatType> result = ArrayImgs.floats(13, 13, 3);
+		final RandomAccess<FloatType> ra = result.randomAccess();
+		for (long x = 0; x < 13; x++) {
+			for (long y = 0; y < 13; y++) {
+				ra.setPosition(new long[] { x, y, 0 });
+				ra.get().set(x + 6);
+			}
+		}
+		final RandomAccessibleInterval<FloatType> cropped = roi.crop(result,
+			axes);
+		assertArrayEquals(new long[] { 5, 5, 3 }, Intervals.dimensionsAsLongArray(
+			cropped));
+		assertEquals(10, cropped.randomAccess().get().get(), 0);
+	}
+
+	@Test
+	public void testCropOfScaledResult() {
+		final RegionOfInterest roi = RegionOfInterest.parse("10,10,5,5", image,
+			axes, 4);
+		// twice the size of the processed region in X, projected channels
+		final Img<FloatType> result = ArrayImgs.floats(26, 13);
+		final RandomAccessibleInterval<FloatType> cropped = roi.crop(result,
+			new AxisType[] { Axes.X, Axes.Y });
+		assertArrayEquals(new long[] { 10, 5 }, Intervals.dimensionsAsLongArray(
+			cropped));
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.csbdeep.tiling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class TileResultCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testKeyDependsOnContentAndPrefix() throws IOException {
+		final TileResultCache cache = new TileResultCache(folder.newFolder());
+		final String key = cache.getKey("model", createTile(0));
+		assertEquals(key, cache.getKey("model", createTile(0)));
+		assertNotEquals(key, cache.getKey("model", createTile(1)));
+		assertNotEquals(key, cache.getKey("other model", createTile(0)));
+		// same values, different shape
+		assertNotEquals(key, cache.getKey("model", ArrayImgs.floats(new float[16],
+			16)));
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		final TileResultCache cache = new TileResultCache(folder.newFolder());
+		final String key = cache.getKey("model", createTile(0));
+		assertNull(cache.get(key));
+		final Img<FloatType> result = ArrayImgs.floats(new float[] { 1, 2, 3, 4,
+			5, 6 }, 3, 2);
+		cache.put(key, result);
+		final Img<FloatType> cached = cache.get(key);
+		assertNotNull(cached);
+		assertArrayEquals(new long[] { 3, 2 }, Intervals.dimensionsAsLongArray(
+			cached));
+		float expected = 1;
+		for (final FloatType value : cached) {
+			assertEquals(expected++, value.get(), 0);
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+		final File modelsDirectory = folder.newFolder();
+		final String[] keys = new String[3];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new TileResultCache(modelsDirectory).getKey("model",
+				createTile(i));
+		}
+		new TileResultCache(modelsDirectory).put(keys[0], createTile(0));
+		final long entrySize = new File(new File(modelsDirectory,
+			TileResultCache.DIRECTORY_NAME), keys[0] + ".bin").length();
+
+		// room for two entries
+		final TileResultCache cache = new TileResultCache(modelsDirectory, 2 *
+			entrySize);
+		cache.put(keys[1], createTile(1));
+		new File(cache.getDirectory(), keys[0] + ".bin").setLastModified(1000);
+		new File(cache.getDirectory(), keys[1] + ".bin").setLastModified(2000);
+		cache.put(keys[2], createTile(2));
+		assertNull(cache.get(keys[0]));
+		assertNotNull(cache.get(keys[1]));
+		assertNotNull(cache.get(keys[2]));
+	}
+
+	@Test
+	public void testFailedWriteLeavesNoTemporaryFile() throws IOException {
+		final TileResultCache cache = new TileResultCache(folder.newFolder());
+		final String key = cache.getKey("model", createTile(0));
+		// a non-empty directory in place of the entry cannot be replaced
+		final File blocker = new File(cache.getDirectory(), key + ".bin");
+		assertTrue(blocker.mkdirs());
+		assertTrue(new File(blocker, "file").createNewFile());
+		cache.put(key, createTile(0));
+		assertTrue(blocker.isDirectory());
+		assertArrayEquals(new String[] { key + ".bin" }, cache.getDirectory()
+			.list());
+	}
+
+	private static Img<FloatType> createTile(final float offset) {
+		final Img<FloatType> tile = ArrayImgs.floats(4, 4);
+		float i = offset;
+		for (final FloatType value : tile) {
+			value.set(i++);
+		}
+		return tile;
+	}
+
+}